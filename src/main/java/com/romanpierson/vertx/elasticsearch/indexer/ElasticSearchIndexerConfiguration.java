@@ -13,10 +13,17 @@
 package com.romanpierson.vertx.elasticsearch.indexer;
 
 import com.romanpierson.vertx.elasticsearch.indexer.authentication.Authentication;
+import com.romanpierson.vertx.elasticsearch.indexer.aggregation.Aggregator;
+import com.romanpierson.vertx.elasticsearch.indexer.sampling.Sampler;
 import com.romanpierson.vertx.elasticsearch.indexer.verticle.ElasticSearchIndexerVerticle.IndexFlavour;
 
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.client.WebClientOptions;
+
 public class ElasticSearchIndexerConfiguration {
 
+	private JsonObject jsonConfiguration;
+	
 	private String identifier;
 	private IndexFlavour indexFlavour;
 	
@@ -31,6 +38,22 @@ public class ElasticSearchIndexerConfiguration {
 	
 	private Authentication authentication;
 	
+	private long indexScheduleInterval;
+	private int maxBufferedEvents;
+	private int maxInFlightRequests;
+	private int maxBulkEvents;
+	private BufferMode bufferMode;
+	private long maxOffHeapBytes;
+	
+	private long priorityLingerTime;
+	private int priorityMaxBufferedEvents;
+	private int priorityMaxInFlightRequests;
+	
+	private Sampler sampler;
+	private Aggregator aggregator;
+	
+	private WebClientOptions webClientOptions;
+	
 	public enum IndexMode{
 		
 		STATIC_NAME,
@@ -39,6 +62,13 @@ public class ElasticSearchIndexerConfiguration {
 		
 	}
 
+	public enum BufferMode{
+		
+		HEAP,
+		OFF_HEAP
+		
+	}
+
 	public ElasticSearchIndexerConfiguration setAuthentication(final Authentication authentication) {
 		
 		this.authentication = authentication;
@@ -47,6 +77,110 @@ public class ElasticSearchIndexerConfiguration {
 		
 	}
 	
+	public ElasticSearchIndexerConfiguration setIndexScheduleInterval(final long indexScheduleInterval) {
+		
+		this.indexScheduleInterval = indexScheduleInterval;
+		
+		return this;
+		
+	}
+	
+	public ElasticSearchIndexerConfiguration setMaxBufferedEvents(final int maxBufferedEvents) {
+		
+		this.maxBufferedEvents = maxBufferedEvents;
+		
+		return this;
+		
+	}
+	
+	public ElasticSearchIndexerConfiguration setMaxInFlightRequests(final int maxInFlightRequests) {
+		
+		this.maxInFlightRequests = maxInFlightRequests;
+		
+		return this;
+		
+	}
+	
+	public ElasticSearchIndexerConfiguration setMaxBulkEvents(final int maxBulkEvents) {
+		
+		this.maxBulkEvents = maxBulkEvents;
+		
+		return this;
+		
+	}
+	
+	public ElasticSearchIndexerConfiguration setBufferMode(final BufferMode bufferMode) {
+		
+		this.bufferMode = bufferMode;
+		
+		return this;
+		
+	}
+	
+	public ElasticSearchIndexerConfiguration setMaxOffHeapBytes(final long maxOffHeapBytes) {
+		
+		this.maxOffHeapBytes = maxOffHeapBytes;
+		
+		return this;
+		
+	}
+	
+	public ElasticSearchIndexerConfiguration setPriorityLingerTime(final long priorityLingerTime) {
+		
+		this.priorityLingerTime = priorityLingerTime;
+		
+		return this;
+		
+	}
+	
+	public ElasticSearchIndexerConfiguration setPriorityMaxBufferedEvents(final int priorityMaxBufferedEvents) {
+		
+		this.priorityMaxBufferedEvents = priorityMaxBufferedEvents;
+		
+		return this;
+		
+	}
+	
+	public ElasticSearchIndexerConfiguration setPriorityMaxInFlightRequests(final int priorityMaxInFlightRequests) {
+		
+		this.priorityMaxInFlightRequests = priorityMaxInFlightRequests;
+		
+		return this;
+		
+	}
+	
+	public ElasticSearchIndexerConfiguration setSampler(final Sampler sampler) {
+		
+		this.sampler = sampler;
+		
+		return this;
+		
+	}
+	
+	public ElasticSearchIndexerConfiguration setAggregator(final Aggregator aggregator) {
+		
+		this.aggregator = aggregator;
+		
+		return this;
+		
+	}
+	
+	public ElasticSearchIndexerConfiguration setWebClientOptions(final WebClientOptions webClientOptions) {
+		
+		this.webClientOptions = webClientOptions;
+		
+		return this;
+		
+	}
+	
+	public ElasticSearchIndexerConfiguration setJsonConfiguration(final JsonObject jsonConfiguration) {
+		
+		this.jsonConfiguration = jsonConfiguration;
+		
+		return this;
+		
+	}
+	
 	public ElasticSearchIndexerConfiguration setIdentifier(final String identifier) {
 		
 		this.identifier = identifier;
@@ -136,6 +270,14 @@ public class ElasticSearchIndexerConfiguration {
 	}
 
 
+	/**
+	 * 
+	 * @return	The raw json this configuration was read from
+	 */
+	public JsonObject getJsonConfiguration() {
+		return jsonConfiguration;
+	}
+	
 	public String getIdentifier() {
 		return identifier;
 	}
@@ -153,4 +295,52 @@ public class ElasticSearchIndexerConfiguration {
 		return indexTimestampFieldName;
 	}
 	
+	public long getIndexScheduleInterval() {
+		return indexScheduleInterval;
+	}
+	
+	public int getMaxBufferedEvents() {
+		return maxBufferedEvents;
+	}
+	
+	public int getMaxInFlightRequests() {
+		return maxInFlightRequests;
+	}
+	
+	public int getMaxBulkEvents() {
+		return maxBulkEvents;
+	}
+	
+	public BufferMode getBufferMode() {
+		return bufferMode;
+	}
+	
+	public long getMaxOffHeapBytes() {
+		return maxOffHeapBytes;
+	}
+	
+	public long getPriorityLingerTime() {
+		return priorityLingerTime;
+	}
+	
+	public int getPriorityMaxBufferedEvents() {
+		return priorityMaxBufferedEvents;
+	}
+	
+	public int getPriorityMaxInFlightRequests() {
+		return priorityMaxInFlightRequests;
+	}
+	
+	public Sampler getSampler() {
+		return sampler;
+	}
+	
+	public Aggregator getAggregator() {
+		return aggregator;
+	}
+	
+	public WebClientOptions getWebClientOptions() {
+		return webClientOptions;
+	}
+	
 }
\ No newline at end of file
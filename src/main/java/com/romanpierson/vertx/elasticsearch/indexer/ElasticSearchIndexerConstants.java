@@ -15,10 +15,13 @@ package com.romanpierson.vertx.elasticsearch.indexer;
 public interface ElasticSearchIndexerConstants {
 
 	static final String EVENTBUS_EVENT_NAME = "es.indexer.event";
+	static final String EVENTBUS_PRIORITY_EVENT_NAME = "es.indexer.event.priority";
+	static final String EVENTBUS_CONFIG_NAME = "es.indexer.config";
 	
 	interface Configuration {
 		
 		static final String INSTANCES = "instances";
+		static final String ROUTES = "routes";
 		static final String IDENTIFIER = "identifier";
 		static final String FLAVOUR = "flavour";
 		static final String HOST = "host";
@@ -29,13 +32,82 @@ public interface ElasticSearchIndexerConstants {
 		static final String SSL = "ssl";
 		static final String SSL_TRUST_ALL = "sslTrustAll";
 		static final String AUTHENTICATION = "authentication";
+		static final String SAMPLING = "sampling";
+		static final String HTTP_CLIENT = "httpClient";
 		
 		static final String INDEX_SCHEDULE_INTERVAL = "indexScheduleInterval";
+		static final String MAX_BUFFERED_EVENTS = "maxBufferedEvents";
+		static final String MAX_IN_FLIGHT_REQUESTS = "maxInFlightRequests";
+		static final String MAX_BULK_EVENTS = "maxBulkEvents";
+		static final String BUFFER_MODE = "bufferMode";
+		static final String MAX_OFF_HEAP_BYTES = "maxOffHeapBytes";
+		static final String OFF_HEAP_CHUNK_SIZE = "offHeapChunkSize";
+		static final String PRIORITY = "priority";
+		static final String AGGREGATION = "aggregation";
 		
 		
+		interface Sampling {
+			
+			static final String FIELD = "field";
+			static final String PATTERN = "pattern";
+			static final String RATE = "rate";
+			static final String MAX_EVENTS_PER_SECOND = "maxEventsPerSecond";
+			
+		}
+		
+		interface Routes {
+			
+			static final String FIELD = "field";
+			static final String PATTERN = "pattern";
+			static final String TARGETS = "targets";
+			
+		}
+		
+		interface Priority {
+			
+			static final String LINGER_TIME = "lingerTime";
+			static final String MAX_BUFFERED_EVENTS = "maxBufferedEvents";
+			static final String MAX_IN_FLIGHT_REQUESTS = "maxInFlightRequests";
+			
+		}
+		
+		interface Aggregation {
+			
+			static final String KEY_FIELDS = "keyFields";
+			static final String BUCKET_INTERVAL = "bucketInterval";
+			static final String LATENCY_FIELD = "latencyField";
+			static final String INDEX_MODE = "indexMode";
+			static final String INDEX_NAME_OR_PATTERN = "indexNameOrPattern";
+			static final String KEEP_RAW_EVENTS = "keepRawEvents";
+			static final String MAX_GROUPS = "maxGroups";
+			
+		}
+		
+		interface HttpClient {
+			
+			static final String PROTOCOL_VERSION = "protocolVersion";
+			static final String HTTP2_CLEAR_TEXT_UPGRADE = "http2ClearTextUpgrade";
+			static final String HTTP2_MULTIPLEXING_LIMIT = "http2MultiplexingLimit";
+			static final String CONNECT_TIMEOUT = "connectTimeout";
+			static final String IDLE_TIMEOUT = "idleTimeout";
+			static final String TCP_NO_DELAY = "tcpNoDelay";
+			static final String SEND_BUFFER_SIZE = "sendBufferSize";
+			
+		}
+		
 		interface Defaults {
 			
 			static final Long INDEX_SCHEDULE_INTERVAL = 5000L;
+			static final Integer MAX_BUFFERED_EVENTS = Integer.MAX_VALUE;
+			static final Integer MAX_IN_FLIGHT_REQUESTS = Integer.MAX_VALUE;
+			static final Integer MAX_BULK_EVENTS = 10000;
+			static final Long MAX_OFF_HEAP_BYTES = 64L * 1024 * 1024;
+			static final Integer OFF_HEAP_CHUNK_SIZE = 64 * 1024;
+			static final Long PRIORITY_LINGER_TIME = 50L;
+			static final Integer PRIORITY_MAX_BUFFERED_EVENTS = Integer.MAX_VALUE;
+			static final Integer PRIORITY_MAX_IN_FLIGHT_REQUESTS = 2;
+			static final Long AGGREGATION_BUCKET_INTERVAL = 60000L;
+			static final Integer AGGREGATION_MAX_GROUPS = 10000;
 			
 		}
 	}
@@ -49,7 +121,8 @@ public interface ElasticSearchIndexerConstants {
 				META("meta"),
 				MESSAGE("message"),
 				TIMESTAMP("timestamp"),
-				INSTANCE_IDENTIFIER("instance_identifier");
+				INSTANCE_IDENTIFIER("instance_identifier"),
+				PRIORITY("priority");
 				
 				private final String fieldName;
 				
@@ -64,6 +137,31 @@ public interface ElasticSearchIndexerConstants {
 			
 			
 		}
+		
+		interface Summary{
+			
+			static final String BUCKET_INTERVAL = "bucketInterval";
+			static final String COUNT = "count";
+			static final String LATENCY = "latency";
+			static final String MIN = "min";
+			static final String MAX = "max";
+			static final String SUM = "sum";
+			static final String AVG = "avg";
+			static final String P50 = "p50";
+			static final String P90 = "p90";
+			static final String P99 = "p99";
+			static final String HISTOGRAM = "histogram";
+			static final String VALUES = "values";
+			static final String COUNTS = "counts";
+			
+		}
+		
+		static enum Priority{
+			
+			NORMAL,
+			HIGH
+			
+		}
 	}
 	
 }
@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2016-2024 Roman Pierson
+ * ------------------------------------------------------
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License v2.0 
+ * which accompanies this distribution.
+ *
+ *     The Apache License v2.0 is available at
+ *     http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+package com.romanpierson.vertx.elasticsearch.indexer;
+
+import java.util.regex.Pattern;
+
+import io.vertx.core.json.JsonObject;
+
+/**
+ * 
+ * Optional condition on a message field - without a field it matches every message, with a field but without pattern
+ * every message that contains the field
+ * 
+ * @author Roman Pierson
+ *
+ */
+public class FieldPredicate {
+
+	private final String field;
+	private final Pattern pattern;
+	
+	public FieldPredicate(final String field, final String pattern) {
+		
+		if(field == null && pattern != null) {
+			throw new IllegalArgumentException("Invalid condition - pattern requires a field");
+		}
+		
+		this.field = field;
+		this.pattern = pattern != null ? Pattern.compile(pattern) : null;
+		
+	}
+	
+	/**
+	 * 
+	 * @param message	The message values or null if they are not available (eg pre serialized payload)
+	 * @return			True if the message matches
+	 */
+	public boolean matches(final JsonObject message) {
+		
+		if(field == null) {
+			return true;
+		}
+		
+		if(message == null) {
+			// Field based conditions can only be evaluated on structured messages
+			return false;
+		}
+		
+		final Object value = message.getValue(field);
+		
+		if(value == null) {
+			return false;
+		}
+		
+		return pattern == null || pattern.matcher(value.toString()).matches();
+		
+	}
+	
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright (c) 2016-2024 Roman Pierson
+ * ------------------------------------------------------
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License v2.0 
+ * which accompanies this distribution.
+ *
+ *     The Apache License v2.0 is available at
+ *     http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+package com.romanpierson.vertx.elasticsearch.indexer.aggregation;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+
+import com.romanpierson.vertx.elasticsearch.indexer.ElasticSearchIndexerConfiguration.IndexMode;
+import com.romanpierson.vertx.elasticsearch.indexer.ElasticSearchIndexerConstants.Message.Summary;
+
+import io.vertx.core.json.JsonObject;
+
+/**
+ * 
+ * Rolls up the messages of an instance per time bucket and combination of key field values
+ * 
+ * For each group the number of events and optionally a {@link LatencyHistogram} of the latency field is kept, on flush
+ * one summary document per group of each closed bucket is emitted
+ * 
+ * The number of open groups is bounded by maxGroups, events that would need a further group are dropped and counted.
+ * Timestamps ahead of the current time are clamped to it so no bucket outlives the current one
+ * 
+ * @author Roman Pierson
+ *
+ */
+public class Aggregator {
+
+	private final List<String> keyFields;
+	private final long bucketInterval;
+	private final String latencyField;
+	private final IndexMode indexMode;
+	private final String indexNameOrPattern;
+	private final boolean keepRawEvents;
+	private final int maxGroups;
+	
+	// Bucket start timestamp -> key field values -> group
+	private final TreeMap<Long, Map<List<Object>, Group>> buckets = new TreeMap<>();
+	private int groups = 0;
+	
+	private long droppedTotal = 0;
+	private long droppedSinceLastReport = 0;
+	
+	public Aggregator(final List<String> keyFields, final long bucketInterval, final String latencyField, final IndexMode indexMode, final String indexNameOrPattern, 
+			final boolean keepRawEvents, final int maxGroups) {
+		
+		if (bucketInterval <= 0) {
+			throw new IllegalArgumentException(String.format("Invalid aggregation - bucketInterval [%d] must be positive", bucketInterval));
+		}
+		
+		if (maxGroups <= 0) {
+			throw new IllegalArgumentException(String.format("Invalid aggregation - maxGroups [%d] must be positive", maxGroups));
+		}
+		
+		this.keyFields = keyFields;
+		this.bucketInterval = bucketInterval;
+		this.latencyField = latencyField;
+		this.indexMode = indexMode;
+		this.indexNameOrPattern = indexNameOrPattern;
+		this.keepRawEvents = keepRawEvents;
+		this.maxGroups = maxGroups;
+		
+	}
+	
+	/**
+	 * 
+	 * @param timestamp			The event timestamp
+	 * @param currentTimestamp	The current timestamp
+	 * @param message			The message values
+	 * @return					False if the group limit is reached and the event was dropped
+	 */
+	public boolean add(final long timestamp, final long currentTimestamp, final JsonObject message) {
+		
+		// Events from clocks running ahead would otherwise keep their bucket until that time
+		final long bucketTimestamp = Math.min(timestamp, currentTimestamp);
+		final long bucketStart = bucketTimestamp - Math.floorMod(bucketTimestamp, bucketInterval);
+		
+		final List<Object> key = new ArrayList<>(keyFields.size());
+		
+		for (String keyField : keyFields) {
+			key.add(message.getValue(keyField));
+		}
+		
+		final Map<List<Object>, Group> bucket = buckets.computeIfAbsent(bucketStart, value -> new HashMap<>());
+		
+		Group group = bucket.get(key);
+		
+		if (group == null) {
+			
+			if (groups >= maxGroups) {
+				
+				if (bucket.isEmpty()) {
+					buckets.remove(bucketStart);
+				}
+				
+				droppedTotal++;
+				droppedSinceLastReport++;
+				
+				return false;
+			}
+			
+			group = new Group(latencyField != null);
+			bucket.put(key, group);
+			groups++;
+		}
+		
+		group.count++;
+		
+		if (latencyField != null && message.getValue(latencyField) instanceof Number) {
+			group.latency.record(((Number) message.getValue(latencyField)).longValue());
+		}
+		
+		return true;
+		
+	}
+	
+	public boolean hasBuckets() {
+		return !buckets.isEmpty();
+	}
+	
+	/**
+	 * 
+	 * Emits and removes all buckets that ended before the given timestamp
+	 * 
+	 * @param currentTimestamp	The current timestamp
+	 * @param summaryConsumer	Receives the bucket start timestamp and summary document of each group
+	 */
+	public void drainClosedBuckets(final long currentTimestamp, final BiConsumer<Long, JsonObject> summaryConsumer) {
+		drain(buckets.headMap(currentTimestamp - bucketInterval, true), summaryConsumer);
+	}
+	
+	/**
+	 * 
+	 * Emits and removes all buckets including the currently open ones
+	 * 
+	 * @param summaryConsumer	Receives the bucket start timestamp and summary document of each group
+	 */
+	public void drainAllBuckets(final BiConsumer<Long, JsonObject> summaryConsumer) {
+		drain(buckets, summaryConsumer);
+	}
+	
+	private void drain(final Map<Long, Map<List<Object>, Group>> drainedBuckets, final BiConsumer<Long, JsonObject> summaryConsumer) {
+		
+		final Iterator<Entry<Long, Map<List<Object>, Group>>> iterator = drainedBuckets.entrySet().iterator();
+		
+		while (iterator.hasNext()) {
+			
+			final Entry<Long, Map<List<Object>, Group>> bucket = iterator.next();
+			
+			for (Entry<List<Object>, Group> group : bucket.getValue().entrySet()) {
+				summaryConsumer.accept(bucket.getKey(), toSummary(group.getKey(), group.getValue()));
+			}
+			
+			groups -= bucket.getValue().size();
+			
+			iterator.remove();
+		}
+		
+	}
+	
+	private JsonObject toSummary(final List<Object> key, final Group group) {
+		
+		final JsonObject summary = new JsonObject();
+		
+		for (int i = 0; i < keyFields.size(); i++) {
+			
+			if (key.get(i) != null) {
+				summary.put(keyFields.get(i), key.get(i));
+			}
+		}
+		
+		summary.put(Summary.BUCKET_INTERVAL, bucketInterval).put(Summary.COUNT, group.count);
+		
+		if (group.latency != null && !group.latency.isEmpty()) {
+			summary.put(Summary.LATENCY, group.latency.toJson());
+		}
+		
+		return summary;
+		
+	}
+	
+	/**
+	 * 
+	 * @return	The index mode for the summary documents or null to use the one of the instance
+	 */
+	public IndexMode getIndexMode() {
+		return indexMode;
+	}
+	
+	/**
+	 * 
+	 * @return	The index name or pattern for the summary documents or null to use the one of the instance
+	 */
+	public String getIndexNameOrPattern() {
+		return indexNameOrPattern;
+	}
+	
+	public boolean isKeepRawEvents() {
+		return keepRawEvents;
+	}
+	
+	public long getDroppedTotal() {
+		return droppedTotal;
+	}
+	
+	/**
+	 * 
+	 * @return	The amount of events dropped because of the group limit since the last call of this method
+	 */
+	public long resetDroppedSinceLastReport() {
+		
+		final long value = droppedSinceLastReport;
+		droppedSinceLastReport = 0;
+		
+		return value;
+		
+	}
+	
+	private static final class Group {
+		
+		private long count = 0;
+		private final LatencyHistogram latency;
+		
+		private Group(final boolean isLatencyTracked) {
+			this.latency = isLatencyTracked ? new LatencyHistogram() : null;
+		}
+		
+	}
+	
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2016-2024 Roman Pierson
+ * ------------------------------------------------------
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License v2.0 
+ * which accompanies this distribution.
+ *
+ *     The Apache License v2.0 is available at
+ *     http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+package com.romanpierson.vertx.elasticsearch.indexer.aggregation;
+
+import com.romanpierson.vertx.elasticsearch.indexer.ElasticSearchIndexerConstants.Message.Summary;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * 
+ * A compact log linear histogram of non negative latency values backed by a single long[]
+ * 
+ * Values below 8 are counted exactly, above each power of two is split into 4 sub buckets so the
+ * relative error of the reported percentiles is at most 12.5%
+ * 
+ * @author Roman Pierson
+ *
+ */
+final class LatencyHistogram {
+
+	private static final int LINEAR_BUCKETS = 8;
+	private static final int SUB_BUCKET_BITS = 2;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	
+	// Exponents 3 to 62 each with 4 sub buckets
+	private static final int BUCKETS = LINEAR_BUCKETS + (63 - 3) * SUB_BUCKETS;
+	
+	private final long[] counts = new long[BUCKETS];
+	
+	private long count = 0;
+	private long sum = 0;
+	private long min = Long.MAX_VALUE;
+	private long max = Long.MIN_VALUE;
+	
+	void record(final long value) {
+		
+		final long normalizedValue = Math.max(0, value);
+		
+		counts[indexOf(normalizedValue)]++;
+		
+		count++;
+		sum += normalizedValue;
+		min = Math.min(min, normalizedValue);
+		max = Math.max(max, normalizedValue);
+		
+	}
+	
+	static int indexOf(final long value) {
+		
+		if (value < LINEAR_BUCKETS) {
+			return (int) value;
+		}
+		
+		final int exponent = 63 - Long.numberOfLeadingZeros(value);
+		final int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		
+		return LINEAR_BUCKETS + (exponent - 3) * SUB_BUCKETS + subBucket;
+		
+	}
+	
+	static long representativeValueOf(final int index) {
+		
+		if (index < LINEAR_BUCKETS) {
+			return index;
+		}
+		
+		final int exponent = 3 + (index - LINEAR_BUCKETS) / SUB_BUCKETS;
+		final int subBucket = (index - LINEAR_BUCKETS) % SUB_BUCKETS;
+		final long width = 1L << (exponent - SUB_BUCKET_BITS);
+		
+		// Middle of the bucket
+		return ((long) (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS)) + width / 2;
+		
+	}
+	
+	long percentile(final double percentile) {
+		
+		final long rank = Math.max(1, (long) Math.ceil(percentile * count));
+		
+		long cumulativeCount = 0;
+		
+		for (int i = 0; i < counts.length; i++) {
+			
+			cumulativeCount += counts[i];
+			
+			if (cumulativeCount >= rank) {
+				return Math.min(max, Math.max(min, representativeValueOf(i)));
+			}
+		}
+		
+		return max;
+		
+	}
+	
+	boolean isEmpty() {
+		return count == 0;
+	}
+	
+	/**
+	 * 
+	 * The non empty buckets are written as values / counts pair so they can be mapped to an ES histogram field
+	 * 
+	 * @return	The summary of the recorded values
+	 */
+	JsonObject toJson() {
+		
+		final JsonArray values = new JsonArray();
+		final JsonArray valueCounts = new JsonArray();
+		
+		for (int i = 0; i < counts.length; i++) {
+			
+			if (counts[i] > 0) {
+				values.add(representativeValueOf(i));
+				valueCounts.add(counts[i]);
+			}
+		}
+		
+		return new JsonObject()
+				.put(Summary.MIN, min)
+				.put(Summary.MAX, max)
+				.put(Summary.SUM, sum)
+				.put(Summary.AVG, (double) sum / count)
+				.put(Summary.P50, percentile(0.5))
+				.put(Summary.P90, percentile(0.9))
+				.put(Summary.P99, percentile(0.99))
+				.put(Summary.HISTOGRAM, new JsonObject().put(Summary.VALUES, values).put(Summary.COUNTS, valueCounts));
+		
+	}
+	
+}
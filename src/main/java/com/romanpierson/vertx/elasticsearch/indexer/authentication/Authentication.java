@@ -25,4 +25,27 @@ public interface Authentication {
 	 */
 	void modifyRequest(HttpRequest<Buffer> request);
 	
+	/**
+	 * 
+	 * Indicates if the implementation needs the SHA-256 hash of the request body - in that case it is computed
+	 * while the bulk body is encoded and passed to {@link #modifyRequest(HttpRequest, byte[])}
+	 * 
+	 * @return
+	 */
+	default boolean isPayloadHashRequired() {
+		return false;
+	}
+	
+	/**
+	 * 
+	 * Allows the authentication implementation to modify the request based on the payload, by default
+	 * delegates to {@link #modifyRequest(HttpRequest)}
+	 * 
+	 * @param request
+	 * @param payloadHash	The SHA-256 hash of the request body or null if not required
+	 */
+	default void modifyRequest(HttpRequest<Buffer> request, byte[] payloadHash) {
+		modifyRequest(request);
+	}
+	
 }
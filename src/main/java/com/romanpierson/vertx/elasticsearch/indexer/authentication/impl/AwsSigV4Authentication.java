@@ -0,0 +1,239 @@
+/*
+ * Copyright (c) 2016-2024 Roman Pierson
+ * ------------------------------------------------------
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License v2.0 
+ * which accompanies this distribution.
+ *
+ *     The Apache License v2.0 is available at
+ *     http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+package com.romanpierson.vertx.elasticsearch.indexer.authentication.impl;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import com.romanpierson.vertx.elasticsearch.indexer.authentication.Authentication;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.client.HttpRequest;
+
+/**
+ * 
+ * Signs requests with AWS Signature Version 4 (eg for Amazon OpenSearch Service)
+ * 
+ * The payload hash is computed by the verticle while encoding the bulk body, the derived signing key
+ * is cached for the current day
+ * 
+ * Credentials are taken from the configuration or if missing from the standard AWS environment variables
+ * 
+ * @author Roman Pierson
+ *
+ */
+public class AwsSigV4Authentication implements Authentication {
+
+	private static final String ALGORITHM = "AWS4-HMAC-SHA256";
+	private static final String HMAC_ALGORITHM = "HmacSHA256";
+	
+	private static final DateTimeFormatter AMZ_DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'");
+	private static final DateTimeFormatter DATE_STAMP_FORMATTER = DateTimeFormatter.ofPattern("yyyyMMdd");
+	
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+	
+	private final String region;
+	private final String service;
+	private final String accessKeyId;
+	private final String secretAccessKey;
+	private final String sessionToken;
+	private final boolean isSSL;
+	
+	private String cachedDateStamp;
+	private byte[] cachedSigningKey;
+	
+	public AwsSigV4Authentication(final JsonObject jsonConfig, final boolean isSSL) {
+		
+		this.region = jsonConfig.getString("region", System.getenv("AWS_REGION"));
+		this.service = jsonConfig.getString("service", "es");
+		this.accessKeyId = jsonConfig.getString("accessKeyId", System.getenv("AWS_ACCESS_KEY_ID"));
+		this.secretAccessKey = jsonConfig.getString("secretAccessKey", System.getenv("AWS_SECRET_ACCESS_KEY"));
+		this.sessionToken = jsonConfig.getString("sessionToken", System.getenv("AWS_SESSION_TOKEN"));
+		this.isSSL = isSSL;
+		
+		if(region == null || accessKeyId == null || secretAccessKey == null) {
+			throw new IllegalArgumentException("Invalid authentication configuration of type AWS - region, accessKeyId and secretAccessKey are required");
+		}
+		
+	}
+	
+	@Override
+	public boolean isPayloadHashRequired() {
+		return true;
+	}
+
+	@Override
+	public void modifyRequest(final HttpRequest<Buffer> request) {
+		
+		throw new IllegalStateException("AWS authentication requires the payload hash");
+		
+	}
+	
+	@Override
+	public void modifyRequest(final HttpRequest<Buffer> request, final byte[] payloadHash) {
+		
+		final ZonedDateTime now = ZonedDateTime.now(ZoneOffset.UTC);
+		final String payloadHashHex = toHex(payloadHash);
+		
+		final String host = getHostHeader(request.host(), request.port());
+		
+		// Sorted by name as required for the canonical request
+		final SortedMap<String, String> signedHeaders = new TreeMap<>();
+		
+		signedHeaders.put("host", host);
+		signedHeaders.put("x-amz-content-sha256", payloadHashHex);
+		signedHeaders.put("x-amz-date", AMZ_DATE_FORMATTER.format(now));
+		
+		if(sessionToken != null) {
+			signedHeaders.put("x-amz-security-token", sessionToken);
+		}
+		
+		signedHeaders.forEach(request::putHeader);
+		
+		request.putHeader("authorization", getAuthorization(request.method().name(), request.uri(), signedHeaders, payloadHashHex, now));
+		
+	}
+	
+	String getHostHeader(final String host, final int port) {
+		
+		// Vertx omits the default port of the scheme in the host header
+		return port == (isSSL ? 443 : 80) ? host : host + ":" + port;
+		
+	}
+	
+	/**
+	 * 
+	 * @param method			The http method
+	 * @param uri				The request uri including the query
+	 * @param signedHeaders		The headers to sign with lowercase names, including host and x-amz-date
+	 * @param payloadHashHex	The hex encoded SHA-256 hash of the payload
+	 * @param now				The signing time
+	 * @return					The authorization header value
+	 */
+	String getAuthorization(final String method, final String uri, final SortedMap<String, String> signedHeaders, final String payloadHashHex, final ZonedDateTime now) {
+		
+		final String amzDate = AMZ_DATE_FORMATTER.format(now);
+		final String dateStamp = DATE_STAMP_FORMATTER.format(now);
+		
+		final String scope = dateStamp + "/" + region + "/" + service + "/aws4_request";
+		
+		try {
+			
+			final String stringToSign = getStringToSign(amzDate, scope, getCanonicalRequest(method, uri, signedHeaders, payloadHashHex));
+			
+			final String signature = toHex(hmac(getSigningKey(dateStamp), stringToSign));
+			
+			return ALGORITHM + " Credential=" + accessKeyId + "/" + scope + ", SignedHeaders=" + String.join(";", signedHeaders.keySet()) + ", Signature=" + signature;
+			
+		} catch (GeneralSecurityException ex) {
+			throw new IllegalStateException("Failed to sign request", ex);
+		}
+		
+	}
+	
+	static String getCanonicalRequest(final String method, final String uri, final SortedMap<String, String> signedHeaders, final String payloadHashHex) {
+		
+		final int queryIndex = uri.indexOf('?');
+		
+		final StringBuilder canonicalRequest = new StringBuilder()
+				.append(method).append('\n')
+				.append(queryIndex < 0 ? uri : uri.substring(0, queryIndex)).append('\n')
+				.append(queryIndex < 0 ? "" : getCanonicalQuery(uri.substring(queryIndex + 1))).append('\n');
+		
+		signedHeaders.forEach((name, value) -> canonicalRequest.append(name).append(':').append(value).append('\n'));
+		
+		return canonicalRequest.append('\n')
+				.append(String.join(";", signedHeaders.keySet())).append('\n')
+				.append(payloadHashHex)
+				.toString();
+		
+	}
+	
+	static String getStringToSign(final String amzDate, final String scope, final String canonicalRequest) throws GeneralSecurityException {
+		
+		return ALGORITHM + '\n' + amzDate + '\n' + scope + '\n' 
+				+ toHex(MessageDigest.getInstance("SHA-256").digest(canonicalRequest.getBytes(StandardCharsets.UTF_8)));
+		
+	}
+	
+	byte[] getSigningKey(final String dateStamp) throws GeneralSecurityException {
+		
+		// The derived key only depends on day, region and service so we only derive it once per day
+		if(!dateStamp.equals(cachedDateStamp)) {
+			
+			final byte[] dateKey = hmac(("AWS4" + secretAccessKey).getBytes(StandardCharsets.UTF_8), dateStamp);
+			final byte[] regionKey = hmac(dateKey, region);
+			final byte[] serviceKey = hmac(regionKey, service);
+			
+			cachedSigningKey = hmac(serviceKey, "aws4_request");
+			cachedDateStamp = dateStamp;
+		}
+		
+		return cachedSigningKey;
+		
+	}
+	
+	private static String getCanonicalQuery(final String query) {
+		
+		if(query.isEmpty()) {
+			return query;
+		}
+		
+		final String[] parameters = query.split("&");
+		
+		for (int i = 0; i < parameters.length; i++) {
+			if(parameters[i].indexOf('=') < 0) {
+				parameters[i] = parameters[i] + "=";
+			}
+		}
+		
+		Arrays.sort(parameters);
+		
+		return String.join("&", parameters);
+		
+	}
+	
+	private static byte[] hmac(final byte[] key, final String value) throws GeneralSecurityException {
+		
+		final Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+		mac.init(new SecretKeySpec(key, HMAC_ALGORITHM));
+		
+		return mac.doFinal(value.getBytes(StandardCharsets.UTF_8));
+		
+	}
+	
+	static String toHex(final byte[] value) {
+		
+		final char[] hex = new char[value.length * 2];
+		
+		for (int i = 0; i < value.length; i++) {
+			hex[i * 2] = HEX[(value[i] >> 4) & 0xf];
+			hex[i * 2 + 1] = HEX[value[i] & 0xf];
+		}
+		
+		return new String(hex);
+		
+	}
+	
+}
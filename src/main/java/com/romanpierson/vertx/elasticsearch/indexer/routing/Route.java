@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2016-2024 Roman Pierson
+ * ------------------------------------------------------
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License v2.0 
+ * which accompanies this distribution.
+ *
+ *     The Apache License v2.0 is available at
+ *     http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+package com.romanpierson.vertx.elasticsearch.indexer.routing;
+
+import java.util.List;
+
+import com.romanpierson.vertx.elasticsearch.indexer.FieldPredicate;
+
+import io.vertx.core.json.JsonObject;
+
+/**
+ * 
+ * Maps events sent for an identifier - optionally only if a message field matches - to one or more target instances
+ * 
+ * @author Roman Pierson
+ *
+ */
+public class Route {
+
+	private final String identifier;
+	private final FieldPredicate predicate;
+	private final List<String> targets;
+	
+	public Route(final String identifier, final String field, final String pattern, final List<String> targets) {
+		
+		if(identifier == null || targets == null || targets.isEmpty()) {
+			throw new IllegalArgumentException("Invalid route - identifier and at least one target are required");
+		}
+		
+		this.identifier = identifier;
+		this.predicate = new FieldPredicate(field, pattern);
+		this.targets = targets;
+		
+	}
+	
+	/**
+	 * 
+	 * @param message	The message values or null if they are not available (eg pre serialized payload)
+	 * @return			True if the route applies
+	 */
+	public boolean matches(final JsonObject message) {
+		
+		return predicate.matches(message);
+		
+	}
+	
+	public String getIdentifier() {
+		return identifier;
+	}
+	
+	public List<String> getTargets() {
+		return targets;
+	}
+	
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2016-2024 Roman Pierson
+ * ------------------------------------------------------
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License v2.0 
+ * which accompanies this distribution.
+ *
+ *     The Apache License v2.0 is available at
+ *     http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+package com.romanpierson.vertx.elasticsearch.indexer.sampling;
+
+import java.util.List;
+
+import io.vertx.core.json.JsonObject;
+
+/**
+ * 
+ * Holds the sampling rules of an instance - the first rule that matches a message decides if it is kept
+ * 
+ * Messages that match none of the rules are always kept
+ * 
+ * @author Roman Pierson
+ *
+ */
+public class Sampler {
+
+	private final List<SamplingRule> rules;
+	
+	private long sampledOutTotal = 0;
+	private long sampledOutSinceLastReport = 0;
+	
+	public Sampler(final List<SamplingRule> rules) {
+		
+		this.rules = rules;
+		
+	}
+	
+	/**
+	 * 
+	 * @param message	The message values or null if they are not available (eg pre serialized payload)
+	 * @return			True if the event should be indexed, false if its sampled out
+	 */
+	public boolean sample(final JsonObject message) {
+		
+		for (SamplingRule rule : rules) {
+			
+			if(rule.matches(message)) {
+				
+				if(rule.accept()) {
+					return true;
+				}
+				
+				sampledOutTotal++;
+				sampledOutSinceLastReport++;
+				
+				return false;
+			}
+			
+		}
+		
+		return true;
+		
+	}
+	
+	public long getSampledOutTotal() {
+		return sampledOutTotal;
+	}
+	
+	/**
+	 * 
+	 * @return	The amount of events sampled out since the last call of this method
+	 */
+	public long resetSampledOutSinceLastReport() {
+		
+		final long value = sampledOutSinceLastReport;
+		sampledOutSinceLastReport = 0;
+		
+		return value;
+		
+	}
+	
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2016-2024 Roman Pierson
+ * ------------------------------------------------------
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License v2.0 
+ * which accompanies this distribution.
+ *
+ *     The Apache License v2.0 is available at
+ *     http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+package com.romanpierson.vertx.elasticsearch.indexer.sampling;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.romanpierson.vertx.elasticsearch.indexer.FieldPredicate;
+
+import io.vertx.core.json.JsonObject;
+
+/**
+ * 
+ * A single sampling rule - it optionally applies only to messages where the given field matches the pattern
+ * and either keeps a fixed rate of events, limits to a maximum number of events per second (token bucket) or both
+ * 
+ * @author Roman Pierson
+ *
+ */
+public class SamplingRule {
+
+	private final FieldPredicate predicate;
+	private final Double rate;
+	private final Long maxEventsPerSecond;
+	
+	private double availableTokens;
+	private long lastRefillNanos;
+	
+	public SamplingRule(final String field, final String pattern, final Double rate, final Long maxEventsPerSecond) {
+		
+		if(rate == null && maxEventsPerSecond == null) {
+			throw new IllegalArgumentException("Invalid sampling rule - either rate or maxEventsPerSecond must be specified");
+		}
+		
+		if(rate != null && (rate < 0 || rate > 1)) {
+			throw new IllegalArgumentException(String.format("Invalid sampling rule - rate [%s] must be between 0 and 1", rate));
+		}
+		
+		if(maxEventsPerSecond != null && maxEventsPerSecond < 0) {
+			throw new IllegalArgumentException(String.format("Invalid sampling rule - maxEventsPerSecond [%d] must not be negative", maxEventsPerSecond));
+		}
+		
+		this.predicate = new FieldPredicate(field, pattern);
+		this.rate = rate;
+		this.maxEventsPerSecond = maxEventsPerSecond;
+		
+		this.availableTokens = maxEventsPerSecond != null ? maxEventsPerSecond : 0;
+		this.lastRefillNanos = System.nanoTime();
+		
+	}
+	
+	/**
+	 * 
+	 * Checks if the rule is applicable for the message
+	 * 
+	 * @param message	The message values or null if they are not available (eg pre serialized payload)
+	 * @return			True if the rule applies
+	 */
+	public boolean matches(final JsonObject message) {
+		
+		return predicate.matches(message);
+		
+	}
+	
+	/**
+	 * 
+	 * Decides if an event that matched this rule is kept
+	 * 
+	 * @return	True if the event should be indexed, false if its sampled out
+	 */
+	public boolean accept() {
+		
+		if(rate != null && ThreadLocalRandom.current().nextDouble() >= rate) {
+			return false;
+		}
+		
+		if(maxEventsPerSecond != null) {
+			
+			final long now = System.nanoTime();
+			
+			// Refill the bucket based on the elapsed time - the capacity is one second worth of events
+			availableTokens = Math.min(maxEventsPerSecond, availableTokens + (now - lastRefillNanos) * maxEventsPerSecond / 1_000_000_000d);
+			lastRefillNanos = now;
+			
+			if(availableTokens < 1) {
+				return false;
+			}
+			
+			availableTokens--;
+		}
+		
+		return true;
+		
+	}
+	
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2016-2024 Roman Pierson
+ * ------------------------------------------------------
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License v2.0 
+ * which accompanies this distribution.
+ *
+ *     The Apache License v2.0 is available at
+ *     http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+package com.romanpierson.vertx.elasticsearch.indexer.verticle;
+
+import java.security.MessageDigest;
+
+import io.vertx.core.buffer.Buffer;
+
+/**
+ * 
+ * Appends the encoded bulk lines to a {@link Buffer} and optionally feeds the payload digest with the appended
+ * bytes on the way, so the body does not have to be copied again for hashing
+ * 
+ * @author Roman Pierson
+ *
+ */
+final class BufferBulkBodyWriter implements BulkBodyWriter {
+
+	private static final int DIGEST_WINDOW_SIZE = 8 * 1024;
+	
+	private final Buffer body;
+	private final MessageDigest payloadDigest;
+	
+	private byte[] digestWindow;
+	
+	/**
+	 * 
+	 * @param body				The buffer to append to
+	 * @param payloadDigest		Optional digest to update with all appended bytes
+	 */
+	BufferBulkBodyWriter(final Buffer body, final MessageDigest payloadDigest) {
+		
+		this.body = body;
+		this.payloadDigest = payloadDigest;
+		
+	}
+	
+	@Override
+	public void write(final byte[] value) {
+		
+		body.appendBytes(value);
+		
+		if (payloadDigest != null) {
+			payloadDigest.update(value);
+		}
+		
+	}
+	
+	@Override
+	public void write(final Buffer value, final int start, final int end) {
+		
+		body.appendBuffer(value, start, end - start);
+		
+		if (payloadDigest != null) {
+			
+			// Vertx 4 and 5 offer no common access to the memory backing a buffer so it is hashed through a reused window
+			if (digestWindow == null) {
+				digestWindow = new byte[DIGEST_WINDOW_SIZE];
+			}
+			
+			for (int offset = start; offset < end; offset += digestWindow.length) {
+				
+				final int windowEnd = Math.min(end, offset + digestWindow.length);
+				
+				value.getBytes(offset, windowEnd, digestWindow, 0);
+				payloadDigest.update(digestWindow, 0, windowEnd - offset);
+			}
+		}
+		
+	}
+	
+	Buffer getBody() {
+		return body;
+	}
+	
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2016-2024 Roman Pierson
+ * ------------------------------------------------------
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License v2.0 
+ * which accompanies this distribution.
+ *
+ *     The Apache License v2.0 is available at
+ *     http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+package com.romanpierson.vertx.elasticsearch.indexer.verticle;
+
+import java.nio.charset.StandardCharsets;
+
+import io.vertx.core.buffer.Buffer;
+
+/**
+ * 
+ * Target the encoded bulk lines of the index events are written to
+ * 
+ * @author Roman Pierson
+ *
+ */
+interface BulkBodyWriter {
+
+	default void write(final String value) {
+		write(value.getBytes(StandardCharsets.UTF_8));
+	}
+	
+	void write(byte[] value);
+	
+	/**
+	 * 
+	 * @param value	The buffer to write a range of
+	 * @param start	The start index (inclusive)
+	 * @param end	The end index (exclusive)
+	 */
+	void write(Buffer value, int start, int end);
+	
+}
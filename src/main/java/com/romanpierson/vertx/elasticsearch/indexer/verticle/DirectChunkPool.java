@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2016-2024 Roman Pierson
+ * ------------------------------------------------------
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License v2.0 
+ * which accompanies this distribution.
+ *
+ *     The Apache License v2.0 is available at
+ *     http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+package com.romanpierson.vertx.elasticsearch.indexer.verticle;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * 
+ * Pool of fixed size direct memory chunks shared by all off heap instance buffers
+ * 
+ * Released chunks are kept for reuse up to the sum of the off heap budgets of the active instances, further released
+ * chunks are left to the garbage collector so the direct memory of removed or reconfigured instances is returned
+ * 
+ * @author Roman Pierson
+ *
+ */
+final class DirectChunkPool {
+
+	private final int chunkSize;
+	private final Deque<ByteBuffer> freeChunks = new ArrayDeque<>();
+	private long maxFreeChunks = 0;
+	
+	DirectChunkPool(final int chunkSize) {
+		
+		this.chunkSize = chunkSize;
+		
+	}
+	
+	ByteBuffer acquire() {
+		
+		final ByteBuffer chunk = freeChunks.poll();
+		
+		if (chunk == null) {
+			return ByteBuffer.allocateDirect(chunkSize);
+		}
+		
+		chunk.clear();
+		
+		return chunk;
+		
+	}
+	
+	void release(final ByteBuffer chunk) {
+		
+		if (freeChunks.size() < maxFreeChunks) {
+			freeChunks.push(chunk);
+		}
+		
+	}
+	
+	/**
+	 * 
+	 * @param maxFreeBytes	The maximum size of the chunks kept for reuse
+	 */
+	void setMaxFreeBytes(final long maxFreeBytes) {
+		
+		this.maxFreeChunks = maxFreeBytes / chunkSize;
+		
+		while (freeChunks.size() > maxFreeChunks) {
+			freeChunks.poll();
+		}
+		
+	}
+	
+	int getChunkSize() {
+		return chunkSize;
+	}
+	
+}
@@ -12,34 +12,50 @@
  */
 package com.romanpierson.vertx.elasticsearch.indexer.verticle;
 
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.TimeZone;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.stream.Collectors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.romanpierson.vertx.elasticsearch.indexer.ElasticSearchIndexerConfiguration;
+import com.romanpierson.vertx.elasticsearch.indexer.ElasticSearchIndexerConfiguration.BufferMode;
 import com.romanpierson.vertx.elasticsearch.indexer.ElasticSearchIndexerConfiguration.IndexMode;
 import com.romanpierson.vertx.elasticsearch.indexer.ElasticSearchIndexerConstants;
 import com.romanpierson.vertx.elasticsearch.indexer.ElasticSearchIndexerConstants.Configuration;
+import com.romanpierson.vertx.elasticsearch.indexer.ElasticSearchIndexerConstants.Message.Priority;
 import com.romanpierson.vertx.elasticsearch.indexer.ElasticSearchIndexerConstants.Message.Structure.Field;
+import com.romanpierson.vertx.elasticsearch.indexer.aggregation.Aggregator;
+import com.romanpierson.vertx.elasticsearch.indexer.authentication.Authentication;
+import com.romanpierson.vertx.elasticsearch.indexer.authentication.impl.AwsSigV4Authentication;
 import com.romanpierson.vertx.elasticsearch.indexer.authentication.impl.BasicAuthentication;
 import com.romanpierson.vertx.elasticsearch.indexer.authentication.impl.BearerAuthentication;
+import com.romanpierson.vertx.elasticsearch.indexer.routing.Route;
+import com.romanpierson.vertx.elasticsearch.indexer.sampling.Sampler;
+import com.romanpierson.vertx.elasticsearch.indexer.sampling.SamplingRule;
 
 import io.vertx.core.AbstractVerticle;
+import io.vertx.core.Future;
 import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpVersion;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.web.client.HttpRequest;
 import io.vertx.ext.web.client.HttpResponse;
@@ -55,13 +71,49 @@ import io.vertx.ext.web.client.WebClientOptions;
  * 
  * meta timestamp instance_identifier message value...1 value...n
  * 
+ * Events with meta priority HIGH (or sent to es.indexer.event.priority) are buffered in a separate lane per
+ * instance that is flushed after a short linger time with its own in-flight request budget
+ * 
+ * Alternatively a {@link Buffer} containing the already encoded json document can be sent, in that case
+ * instance_identifier and timestamp are passed as message headers
+ * 
  * 
  * Configuration of the verticle itself is done via standard vertx config json.
  * 
  * indexScheduleInterval instances [ { identifier host port indexMode
- * {@link IndexMode} indexNameOrPattern ssl (true/false) sslTrustAll
- * (true/false) authentication { type (basic/aws) configuration { (basic
- * example) user password } } } ]
+ * {@link IndexMode} indexNameOrPattern indexScheduleInterval maxBufferedEvents
+ * maxInFlightRequests maxBulkEvents bufferMode {@link BufferMode} maxOffHeapBytes priority { lingerTime
+ * maxBufferedEvents maxInFlightRequests } ssl (true/false) sslTrustAll
+ * (true/false) authentication { type (basic/bearer/aws) configuration { (basic
+ * example) user password } } sampling [ { field pattern rate maxEventsPerSecond } ] aggregation { }
+ * httpClient { protocolVersion (HTTP_1_1/HTTP_2) http2ClearTextUpgrade http2MultiplexingLimit
+ * connectTimeout idleTimeout tcpNoDelay sendBufferSize } } ]
+ * 
+ * The configuration can be replaced at runtime by sending the complete new configuration json to the
+ * es.indexer.config eventbus address - instances are added, removed or reconfigured while keeping the
+ * already buffered events
+ * 
+ * With routes [ { identifier field pattern targets [ ] } ] events sent for an identifier are delivered to
+ * all target instances of the matching routes - the message is encoded only once and shared across the
+ * target buffers. If no route matches the event is indexed to the instance with that identifier
+ * 
+ * Each instance has its own buffer (bounded by maxBufferedEvents), flush schedule (defaults to the global
+ * indexScheduleInterval) and limit of concurrent bulk requests, so one slow cluster does not delay the others.
+ * A flush sends at most maxBulkEvents per bulk request, a larger backlog is sent in several requests as long as the
+ * in-flight budget allows
+ * 
+ * In {@link BufferMode#OFF_HEAP} events are encoded on arrival and kept in pooled direct memory chunks
+ * (offHeapChunkSize) until they are flushed, bounded by maxOffHeapBytes per instance
+ * 
+ * Sampling rules are evaluated before an event is buffered, the first matching rule decides
+ * if the event is kept or sampled out
+ * 
+ * All instance state (buffers, sampling and aggregation) is only accessed from the verticle context and therefore
+ * not thread safe
+ * 
+ * With aggregation { keyFields [ ] bucketInterval latencyField indexNameOrPattern keepRawEvents } events are
+ * rolled up per time bucket and key field values before sampling, on flush one summary document with count and
+ * latency histogram is indexed per group of each closed bucket
  * 
  * @author Roman Pierson
  *
@@ -73,18 +125,20 @@ public class ElasticSearchIndexerVerticle extends AbstractVerticle {
 	private static final TimeZone TIMEZONE_UTC = TimeZone.getTimeZone("UTC");
 	private static final ZoneId TIMEZONE_ID_UTC = ZoneId.of("UTC");
 	
-	private BlockingQueue<JsonObject> queue = new LinkedBlockingQueue<>();
-
 	private Map<String, ElasticSearchIndexerConfiguration> configurations = new HashMap<>();
 	private Long indexScheduleInterval = 5000L;
 
-	private Map<String, WebClient> webClients = new HashMap<>();
+	private Map<String, IndexerInstance> instances = new HashMap<>();
+	private Map<String, List<Route>> routes = new HashMap<>();
+	private long unknownIdentifierDroppedTotal = 0;
+	private long unknownIdentifierDroppedSinceLastReport = 0;
+	private String lastUnknownIdentifier;
+	private DirectChunkPool chunkPool;
 
 	private final DateFormat indexDateModePattern;
 	private final DateFormat indexTimeStampPattern;
 
 	private final String newLine = "\n";
-	private Map<String, String> cachedIndexPrefix = new HashMap<>();
 	
 	public enum IndexFlavour{
 		
@@ -105,24 +159,103 @@ public class ElasticSearchIndexerVerticle extends AbstractVerticle {
 
 	}
 
-	private void readConfig() {
+	private Map<String, ElasticSearchIndexerConfiguration> readConfig(final JsonObject jsonConfig) {
 
-		if (this.config() == null || this.config().getJsonArray(Configuration.INSTANCES, null) == null) {
+		if (jsonConfig == null || jsonConfig.getJsonArray(Configuration.INSTANCES, null) == null) {
 			throw new RuntimeException("Invalid configuration");
 		}
 		;
 
-		for (Object xInstance : this.config().getJsonArray(Configuration.INSTANCES).getList()) {
-			ElasticSearchIndexerConfiguration instanceConfig = readInstanceConfig(xInstance);
-			this.configurations.put(instanceConfig.getIdentifier(), instanceConfig);
+		final long globalIndexScheduleInterval = readIndexScheduleInterval(jsonConfig);
+
+		final Map<String, ElasticSearchIndexerConfiguration> instanceConfigurations = new LinkedHashMap<>();
+
+		for (Object xInstance : jsonConfig.getJsonArray(Configuration.INSTANCES).getList()) {
+			ElasticSearchIndexerConfiguration instanceConfig = readInstanceConfig(xInstance, globalIndexScheduleInterval);
+			instanceConfigurations.put(instanceConfig.getIdentifier(), instanceConfig);
+		}
+
+		return instanceConfigurations;
+
+	}
+
+	private Map<String, List<Route>> readRoutes(final JsonObject jsonConfig, final Map<String, ElasticSearchIndexerConfiguration> instanceConfigurations) {
+
+		final Map<String, List<Route>> routesByIdentifier = new HashMap<>();
+
+		final JsonArray jsonRoutes = jsonConfig.getJsonArray(Configuration.ROUTES, null);
+
+		if (jsonRoutes == null) {
+			return routesByIdentifier;
+		}
+
+		for (Object xRoute : jsonRoutes.getList()) {
+
+			if (!(xRoute instanceof JsonObject)) {
+				throw new RuntimeException("Invalid route configuration");
+			}
+
+			final JsonObject jsonRoute = (JsonObject) xRoute;
+
+			final List<String> targets = new ArrayList<>();
+
+			for (Object xTarget : jsonRoute.getJsonArray(Configuration.Routes.TARGETS, new JsonArray()).getList()) {
+
+				if (!instanceConfigurations.containsKey(xTarget)) {
+					throw new RuntimeException(String.format("Route target [%s] is not a configured instance", xTarget));
+				}
+
+				targets.add((String) xTarget);
+			}
+
+			final Route route = new Route(jsonRoute.getString(Configuration.IDENTIFIER),
+					jsonRoute.getString(Configuration.Routes.FIELD),
+					jsonRoute.getString(Configuration.Routes.PATTERN),
+					targets);
+
+			routesByIdentifier.computeIfAbsent(route.getIdentifier(), identifier -> new ArrayList<>()).add(route);
+		}
+
+		return routesByIdentifier;
+
+	}
+
+	private long readIndexScheduleInterval(final JsonObject jsonConfig) {
+
+		return requirePositive("global", Configuration.INDEX_SCHEDULE_INTERVAL, 
+				jsonConfig.getLong(Configuration.INDEX_SCHEDULE_INTERVAL, Configuration.Defaults.INDEX_SCHEDULE_INTERVAL));
+
+	}
+
+	private int readOffHeapChunkSize(final JsonObject jsonConfig) {
+
+		return requirePositive("global", Configuration.OFF_HEAP_CHUNK_SIZE, 
+				jsonConfig.getInteger(Configuration.OFF_HEAP_CHUNK_SIZE, Configuration.Defaults.OFF_HEAP_CHUNK_SIZE));
+
+	}
+
+	private static <T extends Number> T requirePositive(final String context, final String key, final T value) {
+
+		// Limits are validated upfront so an invalid configuration is never applied partially
+		if (value.longValue() <= 0) {
+			throw new RuntimeException(String.format("Invalid configuration of [%s] - [%s] must be positive but was [%s]", context, key, value));
 		}
 
-		this.indexScheduleInterval = this.config().getLong(Configuration.INDEX_SCHEDULE_INTERVAL,
-				Configuration.Defaults.INDEX_SCHEDULE_INTERVAL);
+		return value;
 
 	}
 
-	private ElasticSearchIndexerConfiguration readInstanceConfig(final Object xInstance) {
+	private static <T extends Number> T requireAtMost(final String context, final String key, final T value, final long maxValue) {
+
+		if (value.longValue() > maxValue) {
+			throw new RuntimeException(String.format("Invalid configuration of [%s] - [%s] must not exceed [%s] but was [%s]", context, key, maxValue, value));
+		}
+
+		return value;
+
+	}
+
+	private ElasticSearchIndexerConfiguration readInstanceConfig(final Object xInstance, final long globalIndexScheduleInterval) {
 
 		if (!(xInstance instanceof JsonObject)) {
 			throw new RuntimeException("Invalid instance configuration");
@@ -152,11 +285,35 @@ public class ElasticSearchIndexerVerticle extends AbstractVerticle {
 				.setIndexFlavour(indexFlavour)
 				.setIndexTimestampFieldName(indexTimestampFieldName)
 				.setHost(host).setIndexMode(indexMode).setIndexNameOrPattern(indexNameOrPattern)
-				.setPort(port.intValue());
+				.setPort(port.intValue())
+				.setJsonConfiguration(jsonInstance)
+				.setIndexScheduleInterval(requirePositive(identifier, Configuration.INDEX_SCHEDULE_INTERVAL, 
+						jsonInstance.getLong(Configuration.INDEX_SCHEDULE_INTERVAL, globalIndexScheduleInterval)))
+				.setMaxBufferedEvents(requirePositive(identifier, Configuration.MAX_BUFFERED_EVENTS, 
+						jsonInstance.getInteger(Configuration.MAX_BUFFERED_EVENTS, Configuration.Defaults.MAX_BUFFERED_EVENTS)))
+				.setMaxInFlightRequests(requirePositive(identifier, Configuration.MAX_IN_FLIGHT_REQUESTS, 
+						jsonInstance.getInteger(Configuration.MAX_IN_FLIGHT_REQUESTS, Configuration.Defaults.MAX_IN_FLIGHT_REQUESTS)))
+				.setMaxBulkEvents(requirePositive(identifier, Configuration.MAX_BULK_EVENTS, 
+						jsonInstance.getInteger(Configuration.MAX_BULK_EVENTS, Configuration.Defaults.MAX_BULK_EVENTS)))
+				.setBufferMode(BufferMode.valueOf(jsonInstance.getString(Configuration.BUFFER_MODE, BufferMode.HEAP.name())))
+				// A single bulk body can not exceed the int range of a buffer
+				.setMaxOffHeapBytes(requireAtMost(identifier, Configuration.MAX_OFF_HEAP_BYTES, requirePositive(identifier, Configuration.MAX_OFF_HEAP_BYTES, 
+						jsonInstance.getLong(Configuration.MAX_OFF_HEAP_BYTES, Configuration.Defaults.MAX_OFF_HEAP_BYTES)), Integer.MAX_VALUE));
+		
+		final JsonObject priority = jsonInstance.getJsonObject(Configuration.PRIORITY, new JsonObject());
+		
+		config.setPriorityLingerTime(requirePositive(identifier, Configuration.PRIORITY + "." + Configuration.Priority.LINGER_TIME, 
+					priority.getLong(Configuration.Priority.LINGER_TIME, Configuration.Defaults.PRIORITY_LINGER_TIME)))
+			.setPriorityMaxBufferedEvents(requirePositive(identifier, Configuration.PRIORITY + "." + Configuration.Priority.MAX_BUFFERED_EVENTS, 
+					priority.getInteger(Configuration.Priority.MAX_BUFFERED_EVENTS, Configuration.Defaults.PRIORITY_MAX_BUFFERED_EVENTS)))
+			.setPriorityMaxInFlightRequests(requirePositive(identifier, Configuration.PRIORITY + "." + Configuration.Priority.MAX_IN_FLIGHT_REQUESTS, 
+					priority.getInteger(Configuration.Priority.MAX_IN_FLIGHT_REQUESTS, Configuration.Defaults.PRIORITY_MAX_IN_FLIGHT_REQUESTS)));
 
 		if (isSSL) {
 			config.setSSL(isSSLtrustAll);
 		}
+		
+		config.setWebClientOptions(readWebClientOptions(jsonInstance.getJsonObject(Configuration.HTTP_CLIENT, new JsonObject()), isSSL, isSSLtrustAll));
 
 		if (authentication != null) {
 			
@@ -166,14 +323,156 @@ public class ElasticSearchIndexerVerticle extends AbstractVerticle {
 				config.setAuthentication(new BasicAuthentication(authentication.getJsonObject("config", new JsonObject())));
 			} else if("bearer".equalsIgnoreCase(authenticationType)){
 				config.setAuthentication(new BearerAuthentication(authentication.getJsonObject("config", new JsonObject())));
+			} else if("aws".equalsIgnoreCase(authenticationType)){
+				config.setAuthentication(new AwsSigV4Authentication(authentication.getJsonObject("config", new JsonObject()), isSSL));
 			} else {
 				throw new RuntimeException("Found invalid authentication type " + authenticationType);
 			}
 		}
 
+		JsonArray sampling = jsonInstance.getJsonArray(Configuration.SAMPLING, null);
+		
+		if (sampling != null && !sampling.isEmpty()) {
+			config.setSampler(readSampler(sampling));
+		}
+		
+		JsonObject aggregation = jsonInstance.getJsonObject(Configuration.AGGREGATION, null);
+		
+		if (aggregation != null) {
+			config.setAggregator(readAggregator(aggregation, config));
+		}
+
 		return config;
 	}
 	
+	private WebClientOptions readWebClientOptions(final JsonObject httpClient, final boolean isSSL, final boolean isSSLtrustAll) {
+		
+		WebClientOptions options = new WebClientOptions();
+		options.setKeepAlive(true);
+		options.setTrustAll(isSSLtrustAll);
+		
+		final String protocolVersionCode = httpClient.getString(Configuration.HttpClient.PROTOCOL_VERSION);
+		
+		if (protocolVersionCode != null) {
+			
+			final HttpVersion protocolVersion = HttpVersion.valueOf(protocolVersionCode);
+			
+			options.setProtocolVersion(protocolVersion);
+			
+			if (HttpVersion.HTTP_2.equals(protocolVersion)) {
+				if (isSSL) {
+					// HTTP/2 over TLS is negotiated via ALPN
+					options.setUseAlpn(true);
+				} else {
+					// h2c - by default with prior knowledge, optionally via HTTP/1.1 upgrade
+					options.setHttp2ClearTextUpgrade(httpClient.getBoolean(Configuration.HttpClient.HTTP2_CLEAR_TEXT_UPGRADE, false));
+				}
+			}
+		}
+		
+		final Integer http2MultiplexingLimit = httpClient.getInteger(Configuration.HttpClient.HTTP2_MULTIPLEXING_LIMIT);
+		if (http2MultiplexingLimit != null) {
+			options.setHttp2MultiplexingLimit(http2MultiplexingLimit);
+		}
+		
+		final Integer connectTimeout = httpClient.getInteger(Configuration.HttpClient.CONNECT_TIMEOUT);
+		if (connectTimeout != null) {
+			options.setConnectTimeout(connectTimeout);
+		}
+		
+		final Integer idleTimeout = httpClient.getInteger(Configuration.HttpClient.IDLE_TIMEOUT);
+		if (idleTimeout != null) {
+			options.setIdleTimeout(idleTimeout);
+			options.setIdleTimeoutUnit(TimeUnit.MILLISECONDS);
+		}
+		
+		final Boolean tcpNoDelay = httpClient.getBoolean(Configuration.HttpClient.TCP_NO_DELAY);
+		if (tcpNoDelay != null) {
+			options.setTcpNoDelay(tcpNoDelay);
+		}
+		
+		final Integer sendBufferSize = httpClient.getInteger(Configuration.HttpClient.SEND_BUFFER_SIZE);
+		if (sendBufferSize != null) {
+			options.setSendBufferSize(sendBufferSize);
+		}
+		
+		return options;
+		
+	}
+	
+	private Sampler readSampler(final JsonArray sampling) {
+		
+		final List<SamplingRule> rules = new ArrayList<>(sampling.size());
+		
+		for (Object xRule : sampling.getList()) {
+			
+			if (!(xRule instanceof JsonObject)) {
+				throw new RuntimeException("Invalid sampling rule configuration");
+			}
+			
+			final JsonObject jsonRule = (JsonObject) xRule;
+			
+			rules.add(new SamplingRule(jsonRule.getString(Configuration.Sampling.FIELD),
+					jsonRule.getString(Configuration.Sampling.PATTERN),
+					jsonRule.getDouble(Configuration.Sampling.RATE),
+					jsonRule.getLong(Configuration.Sampling.MAX_EVENTS_PER_SECOND)));
+		}
+		
+		return new Sampler(rules);
+		
+	}
+	
+	private Aggregator readAggregator(final JsonObject aggregation, final ElasticSearchIndexerConfiguration config) {
+		
+		final List<String> keyFields = new ArrayList<>();
+		
+		for (Object keyField : aggregation.getJsonArray(Configuration.Aggregation.KEY_FIELDS, new JsonArray())) {
+			
+			if (!(keyField instanceof String)) {
+				throw new RuntimeException("Invalid aggregation key field configuration");
+			}
+			
+			keyFields.add((String) keyField);
+		}
+		
+		final String indexModeCode = aggregation.getString(Configuration.Aggregation.INDEX_MODE);
+		final IndexMode indexMode = indexModeCode != null ? IndexMode.valueOf(indexModeCode) : null;
+		final String indexNameOrPattern = aggregation.getString(Configuration.Aggregation.INDEX_NAME_OR_PATTERN);
+		
+		if (indexMode != null || indexNameOrPattern != null) {
+			validateSummaryIndex(config, indexMode != null ? indexMode : config.getIndexMode(), 
+					indexNameOrPattern != null ? indexNameOrPattern : config.getIndexNameOrPattern());
+		}
+		
+		return new Aggregator(keyFields,
+				aggregation.getLong(Configuration.Aggregation.BUCKET_INTERVAL, Configuration.Defaults.AGGREGATION_BUCKET_INTERVAL),
+				aggregation.getString(Configuration.Aggregation.LATENCY_FIELD),
+				indexMode,
+				indexNameOrPattern,
+				aggregation.getBoolean(Configuration.Aggregation.KEEP_RAW_EVENTS, false),
+				aggregation.getInteger(Configuration.Aggregation.MAX_GROUPS, Configuration.Defaults.AGGREGATION_MAX_GROUPS));
+		
+	}
+	
+	private void validateSummaryIndex(final ElasticSearchIndexerConfiguration config, final IndexMode indexMode, final String indexNameOrPattern) {
+		
+		// Axiom takes the dataset from the request path so the bulk index is ignored
+		if (IndexFlavour.AXIOM.equals(config.getIndexFlavour())) {
+			throw new RuntimeException(String.format("Invalid aggregation of [%s] - a separate summary index is not supported for axiom", config.getIdentifier()));
+		}
+		
+		// Placeholders are only replaced for the date pattern modes, ES requires the remaining name to be lowercase
+		final String indexName = IndexMode.STATIC_NAME.equals(indexMode) 
+				? indexNameOrPattern 
+				: indexNameOrPattern.replace("yyyy", "").replace("MM", "").replace("dd", "");
+		
+		if (!indexName.equals(indexName.toLowerCase(Locale.ROOT))) {
+			throw new RuntimeException(String.format("Invalid aggregation of [%s] - summary index [%s] must be lowercase for indexMode [%s]", 
+					config.getIdentifier(), indexNameOrPattern, indexMode));
+		}
+		
+	}
+	
 	private IndexFlavour getApplicableIndexFlavour(String instanceIdentifier, JsonObject indexConfig) {
 		
 		final String indexFlavourCode = indexConfig.getString(Configuration.FLAVOUR);
@@ -201,125 +500,597 @@ public class ElasticSearchIndexerVerticle extends AbstractVerticle {
 
 		super.start();
 
-		readConfig();
+		this.configurations = readConfig(this.config());
+		this.chunkPool = new DirectChunkPool(readOffHeapChunkSize(this.config()));
+		this.routes = readRoutes(this.config(), this.configurations);
+		this.indexScheduleInterval = readIndexScheduleInterval(this.config());
 
 		LOG.info("Started successfully ElasticSearchIndexerVerticle");
 		LOG.info("Index Scheduler Interval is [{}] ms", this.indexScheduleInterval);
 
 		LOG.info("[{}] Global ES instance(s) defined", this.configurations.size());
 
-		this.configurations.values().forEach(config -> {
-			LOG.info(
-					"identifier [{}], host [{}], port[{}], indexMode[{}], indexNameOrPattern[{}], isSSL[{}], isSSLtrustAll[{}] ",
-					config.getIdentifier(), config.getHost(), config.getPort(), config.getIndexMode(),
-					config.getIndexNameOrPattern(), config.isSSL(), config.isSSLTrustAll());
-		});
+		this.configurations.values().forEach(this::logConfiguration);
 
-		vertx.eventBus().<JsonObject>consumer(ElasticSearchIndexerConstants.EVENTBUS_EVENT_NAME, event -> {
+		vertx.eventBus().<Object>consumer(ElasticSearchIndexerConstants.EVENTBUS_EVENT_NAME, event -> handleEvent(event, Priority.NORMAL));
+		vertx.eventBus().<Object>consumer(ElasticSearchIndexerConstants.EVENTBUS_PRIORITY_EVENT_NAME, event -> handleEvent(event, Priority.HIGH));
+
+		vertx.eventBus().<JsonObject>consumer(ElasticSearchIndexerConstants.EVENTBUS_CONFIG_NAME, message -> {
 
 			try {
-				this.queue.put(event.body());
+				
+				applyConfig(message.body());
+				
+				message.reply(new JsonObject().put(Configuration.INSTANCES, new JsonArray(new ArrayList<>(this.instances.keySet()))));
 			} catch (Exception ex) {
-				LOG.error("Error when trying to add event to queue", ex);
+				LOG.error("Error when trying to apply new configuration", ex);
+				message.fail(500, ex.getMessage());
 			}
 
 		});
 
-		initializeClient();
+		initializeInstances();
+
+	}
+	
+	private void handleEvent(final Message<Object> event, final Priority defaultPriority) {
+		
+		try {
+			
+			final IndexEvent indexEvent = toIndexEvent(event, defaultPriority);
+			
+			final List<IndexerInstance> targetInstances = getTargetInstances(indexEvent);
+			
+			if (targetInstances.isEmpty()) {
+				
+				// Only the first drop per report is logged right away, the others are counted
+				if (this.unknownIdentifierDroppedSinceLastReport == 0) {
+					LOG.warn("Cannot index values for unknown instanceIdentifer [{}]", indexEvent.getIdentifier());
+				}
+				
+				this.unknownIdentifierDroppedTotal++;
+				this.unknownIdentifierDroppedSinceLastReport++;
+				this.lastUnknownIdentifier = indexEvent.getIdentifier();
+				
+				return;
+			}
+			
+			// Aggregation sees all events, sampling only applies to the raw events
+			aggregate(targetInstances, indexEvent);
+			
+			// Sampling is decided per target while the message values are still available
+			targetInstances.removeIf(instance -> !isRawEventIndexed(instance) || isSampledOut(instance, indexEvent));
+			
+			if (targetInstances.size() == 1) {
+				offer(targetInstances.get(0), indexEvent);
+				return;
+			}
+			
+			// Encode only once per timestamp field name if the event is shared across multiple targets
+			for (Map.Entry<String, List<IndexerInstance>> targetGroup : getTargetInstancesByTimestampFieldName(targetInstances).entrySet()) {
+				
+				final IndexEvent targetIndexEvent = indexEvent.encoded(targetGroup.getKey());
+				
+				for (IndexerInstance instance : targetGroup.getValue()) {
+					offer(instance, targetIndexEvent);
+				}
+			}
+		} catch (Exception ex) {
+			LOG.error("Error when trying to add event to queue", ex);
+		}
+
+	}
+	
+	private void logConfiguration(final ElasticSearchIndexerConfiguration config) {
+		
+		LOG.info(
+				"identifier [{}], host [{}], port[{}], indexMode[{}], indexNameOrPattern[{}], isSSL[{}], isSSLtrustAll[{}], indexScheduleInterval[{}], maxBufferedEvents[{}], maxInFlightRequests[{}], maxBulkEvents[{}], bufferMode[{}], maxOffHeapBytes[{}], priorityLingerTime[{}], priorityMaxBufferedEvents[{}], priorityMaxInFlightRequests[{}]",
+				config.getIdentifier(), config.getHost(), config.getPort(), config.getIndexMode(),
+				config.getIndexNameOrPattern(), config.isSSL(), config.isSSLTrustAll(), config.getIndexScheduleInterval(),
+				config.getMaxBufferedEvents(), config.getMaxInFlightRequests(), config.getMaxBulkEvents(), config.getBufferMode(), config.getMaxOffHeapBytes(),
+				config.getPriorityLingerTime(), config.getPriorityMaxBufferedEvents(), config.getPriorityMaxInFlightRequests());
+		
+	}
+	
+	private void applyConfig(final JsonObject jsonConfig) {
+		
+		// Read the whole configuration first so an invalid one is not applied partially
+		final Map<String, ElasticSearchIndexerConfiguration> newConfigurations = readConfig(jsonConfig);
+		final Map<String, List<Route>> newRoutes = readRoutes(jsonConfig, newConfigurations);
+		final long newIndexScheduleInterval = readIndexScheduleInterval(jsonConfig);
+		
+		// The chunks of the shared pool are in use by the buffers so their size can not be changed at runtime
+		final int newOffHeapChunkSize = readOffHeapChunkSize(jsonConfig);
+		
+		if (newOffHeapChunkSize != this.chunkPool.getChunkSize()) {
+			LOG.warn("Changed [{}] from [{}] to [{}] is only applied after a redeploy of the verticle", Configuration.OFF_HEAP_CHUNK_SIZE,
+					this.chunkPool.getChunkSize(), newOffHeapChunkSize);
+		}
+		
+		for (String identifier : new ArrayList<>(this.instances.keySet())) {
+			
+			if (newConfigurations.containsKey(identifier)) {
+				continue;
+			}
+			
+			final IndexerInstance instance = this.instances.remove(identifier);
+			
+			cancelIndexing(instance);
+			
+			indexSummaries(instance, true);
+			
+			if (instance.hasBufferedEvents()) {
+				indexCurrentData(instance, true);
+			}
+			
+			instance.close();
+			
+			LOG.info("Removed instance [{}]", identifier);
+		}
+		
+		for (ElasticSearchIndexerConfiguration newConfiguration : newConfigurations.values()) {
+			
+			final IndexerInstance instance = this.instances.get(newConfiguration.getIdentifier());
+			
+			if (instance == null) {
+				
+				createInstance(newConfiguration);
+				
+				LOG.info("Added instance [{}]", newConfiguration.getIdentifier());
+				logConfiguration(newConfiguration);
+				
+			} else if (!newConfiguration.getJsonConfiguration().equals(instance.getConfiguration().getJsonConfiguration())
+					|| newConfiguration.getIndexScheduleInterval() != instance.getConfiguration().getIndexScheduleInterval()) {
+				
+				final boolean isScheduleChanged = newConfiguration.getIndexScheduleInterval() != instance.getConfiguration().getIndexScheduleInterval();
+				
+				// The aggregation state is part of the replaced configuration so open buckets are emitted right away
+				indexSummaries(instance, true);
+				
+				// Buffered events cannot be moved between heap and off heap buffers
+				if (!newConfiguration.getBufferMode().equals(instance.getConfiguration().getBufferMode()) && instance.getNormalLane().hasBufferedEvents()) {
+					indexCurrentData(instance, instance.getNormalLane(), true);
+				}
+				
+				instance.reconfigure(newConfiguration, WebClient.create(vertx, newConfiguration.getWebClientOptions()), 
+						WebClient.create(vertx, newConfiguration.getWebClientOptions()));
+				
+				if (isScheduleChanged) {
+					vertx.cancelTimer(instance.getNormalLane().getTimerId());
+					scheduleIndexing(instance);
+				}
+				
+				LOG.info("Reconfigured instance [{}] keeping [{}] buffered values", newConfiguration.getIdentifier(), instance.getBufferedEvents());
+				logConfiguration(newConfiguration);
+			}
+		}
+		
+		this.configurations = newConfigurations;
+		this.routes = newRoutes;
+		this.indexScheduleInterval = newIndexScheduleInterval;
+		
+		updateChunkPoolLimit();
+		
+	}
+	
+	private void updateChunkPoolLimit() {
+		
+		long maxFreeBytes = 0;
+		
+		for (IndexerInstance instance : this.instances.values()) {
+			
+			if (BufferMode.OFF_HEAP.equals(instance.getConfiguration().getBufferMode())) {
+				maxFreeBytes += instance.getConfiguration().getMaxOffHeapBytes();
+			}
+		}
+		
+		this.chunkPool.setMaxFreeBytes(maxFreeBytes);
+		
+	}
+	
+	private IndexEvent toIndexEvent(final Message<Object> event, final Priority defaultPriority) {
+		
+		if (event.body() instanceof JsonObject) {
+			return IndexEvent.fromJson((JsonObject) event.body(), defaultPriority);
+		}
+		
+		if (event.body() instanceof Buffer) {
+			
+			// Pre serialized document - meta data is passed via headers
+			final String identifier = event.headers().get(Field.INSTANCE_IDENTIFIER.getFieldName());
+			final String timestamp = event.headers().get(Field.TIMESTAMP.getFieldName());
+			
+			if (identifier == null || timestamp == null) {
+				throw new IllegalArgumentException("Invalid event - missing instance identifier or timestamp header");
+			}
+			
+			return IndexEvent.fromPayload(identifier, Long.parseLong(timestamp), event.headers().get(Field.PRIORITY.getFieldName()), defaultPriority, (Buffer) event.body());
+		}
+		
+		throw new IllegalArgumentException("Invalid event - unsupported body type " + (event.body() != null ? event.body().getClass().getName() : null));
+		
+	}
+	
+	private void offer(final IndexerInstance instance, final IndexEvent indexEvent) {
+		
+		if (Priority.HIGH.equals(indexEvent.getPriority())) {
+			
+			if (instance.getPriorityLane().offer(indexEvent)) {
+				schedulePriorityIndexing(instance);
+			}
+			
+			return;
+		}
+		
+		final IndexerLane lane = instance.getNormalLane();
+		
+		if (!lane.isOffHeap()) {
+			lane.offer(indexEvent);
+			return;
+		}
+		
+		// Encode right away into the off heap buffer so nothing but the encoded bytes is retained until the flush
+		appendIndexEvent(lane.startEncodedEvent(), instance, indexEvent);
+		
+		lane.completeEncodedEvent();
+		
+	}
+	
+	private List<IndexerInstance> getTargetInstances(final IndexEvent indexEvent) {
+		
+		final List<IndexerInstance> targetInstances = new ArrayList<>(2);
+		
+		final List<Route> identifierRoutes = this.routes.get(indexEvent.getIdentifier());
+		
+		if (identifierRoutes != null) {
+			
+			for (Route route : identifierRoutes) {
+				
+				if (!route.matches(indexEvent.getMessage())) {
+					continue;
+				}
+				
+				for (String target : route.getTargets()) {
+					
+					final IndexerInstance instance = this.instances.get(target);
+					
+					if (instance != null && !targetInstances.contains(instance)) {
+						targetInstances.add(instance);
+					}
+				}
+			}
+		}
+		
+		if (targetInstances.isEmpty() && this.instances.containsKey(indexEvent.getIdentifier())) {
+			targetInstances.add(this.instances.get(indexEvent.getIdentifier()));
+		}
+		
+		return targetInstances;
+		
+	}
+	
+	private Map<String, List<IndexerInstance>> getTargetInstancesByTimestampFieldName(final List<IndexerInstance> targetInstances) {
+		
+		final Map<String, List<IndexerInstance>> targetInstancesByTimestampFieldName = new LinkedHashMap<>();
+		
+		for (IndexerInstance instance : targetInstances) {
+			targetInstancesByTimestampFieldName.computeIfAbsent(instance.getConfiguration().getIndexTimestampFieldName(), key -> new ArrayList<>()).add(instance);
+		}
+		
+		return targetInstancesByTimestampFieldName;
+		
+	}
+	
+	private void aggregate(final List<IndexerInstance> targetInstances, final IndexEvent indexEvent) {
+		
+		JsonObject message = null;
+		
+		for (IndexerInstance instance : targetInstances) {
+			
+			final Aggregator aggregator = instance.getConfiguration().getAggregator();
+			
+			if (aggregator == null) {
+				continue;
+			}
+			
+			// Pre serialized payloads are only parsed if required and then only once for all targets
+			if (message == null) {
+				message = indexEvent.readMessage();
+			}
+			
+			aggregator.add(indexEvent.getTimestamp(), System.currentTimeMillis(), message);
+		}
+		
+	}
+	
+	private boolean isRawEventIndexed(final IndexerInstance instance) {
+		
+		final Aggregator aggregator = instance.getConfiguration().getAggregator();
+		
+		return aggregator == null || aggregator.isKeepRawEvents();
+		
+	}
+	
+	private void indexSummaries(final IndexerInstance instance, final boolean isIncludeOpenBuckets) {
+		
+		final Aggregator aggregator = instance.getConfiguration().getAggregator();
+		
+		if (aggregator == null || !aggregator.hasBuckets()) {
+			return;
+		}
+		
+		final BiConsumer<Long, JsonObject> summaryConsumer = (bucketStart, summary) -> offer(instance, 
+				IndexEvent.fromSummary(instance.getConfiguration().getIdentifier(), bucketStart, aggregator.getIndexMode(), aggregator.getIndexNameOrPattern(), summary));
+		
+		if (isIncludeOpenBuckets) {
+			aggregator.drainAllBuckets(summaryConsumer);
+		} else {
+			aggregator.drainClosedBuckets(System.currentTimeMillis(), summaryConsumer);
+		}
+		
+	}
+	
+	private boolean isSampledOut(final IndexerInstance instance, final IndexEvent indexEvent) {
+		
+		final Sampler sampler = instance.getConfiguration().getSampler();
+		
+		if (sampler == null) {
+			return false;
+		}
+		
+		return !sampler.sample(indexEvent.getMessage());
+		
+	}
+	
+	private void reportStatistics(final IndexerInstance instance) {
+		
+		final ElasticSearchIndexerConfiguration indexerConfiguration = instance.getConfiguration();
+		
+		if (indexerConfiguration.getSampler() != null) {
+			
+			final long sampledOut = indexerConfiguration.getSampler().resetSampledOutSinceLastReport();
+			
+			if (sampledOut > 0) {
+				LOG.info("Sampled out [{}] values for instanceIdentifier [{}] (total [{}])", sampledOut,
+						indexerConfiguration.getIdentifier(), indexerConfiguration.getSampler().getSampledOutTotal());
+			}
+		}
+		
+		if (indexerConfiguration.getAggregator() != null) {
+			
+			final long dropped = indexerConfiguration.getAggregator().resetDroppedSinceLastReport();
+			
+			if (dropped > 0) {
+				LOG.warn("Dropped [{}] values from aggregation for instanceIdentifier [{}] as group limit was reached (total [{}])", dropped,
+						indexerConfiguration.getIdentifier(), indexerConfiguration.getAggregator().getDroppedTotal());
+			}
+		}
+		
+		for (IndexerLane lane : Arrays.asList(instance.getNormalLane(), instance.getPriorityLane())) {
+			
+			final long dropped = lane.resetDroppedSinceLastReport();
+			
+			if (dropped > 0) {
+				LOG.warn("Dropped [{}] values for instanceIdentifier [{}] in lane [{}] as buffer limit was reached (total [{}])", dropped,
+						indexerConfiguration.getIdentifier(), lane.getName(), lane.getDroppedTotal());
+			}
+		}
+		
+	}
 
-		vertx.setPeriodic(this.indexScheduleInterval, handler -> {
+	private void reportUnknownIdentifiers() {
+		
+		// Reported by the first instance timer that fires after the drops
+		if (this.unknownIdentifierDroppedSinceLastReport > 0) {
+			
+			LOG.warn("Dropped [{}] values for unknown instanceIdentifiers, last one was [{}] (total [{}])", this.unknownIdentifierDroppedSinceLastReport,
+					this.lastUnknownIdentifier, this.unknownIdentifierDroppedTotal);
+			
+			this.unknownIdentifierDroppedSinceLastReport = 0;
+		}
+		
+	}
 
-			if (!this.queue.isEmpty()) {
+	private void indexCurrentData(final IndexerInstance instance, final boolean isIgnoreInFlightLimit) {
 
-				indexCurrentData();
+		for (IndexerLane lane : Arrays.asList(instance.getPriorityLane(), instance.getNormalLane())) {
 
+			if (lane.hasBufferedEvents()) {
+				indexCurrentData(instance, lane, isIgnoreInFlightLimit);
 			}
-		});
+		}
 
 	}
 
-	private void indexCurrentData() {
+	private void indexCurrentData(final IndexerInstance instance, final IndexerLane lane, final boolean isIgnoreInFlightLimit) {
+
+		final ElasticSearchIndexerConfiguration indexerConfiguration = instance.getConfiguration();
 
-		final int currentSize = this.queue.size();
+		if (!isIgnoreInFlightLimit && !lane.isRequestAllowed()) {
+			LOG.warn("Postponing index of [{}] values for instanceIdentifier [{}] in lane [{}] as [{}] requests are still in flight", 
+					lane.getBufferedEvents(), indexerConfiguration.getIdentifier(), lane.getName(), lane.getInFlightRequests());
+			return;
+		}
 
-		final Collection<JsonObject> drainedValues = new ArrayList<>(currentSize);
+		// A large backlog is sent in bounded slices that each take a slot of the in-flight budget, the rest waits for the next run
+		do {
+			indexSlice(instance, lane);
+		} while (lane.hasBufferedEvents() && (isIgnoreInFlightLimit || lane.isRequestAllowed()));
 
-		this.queue.drainTo(drainedValues, currentSize);
+	}
 
-		Map<String, List<JsonObject>> valuesByIdentifier = drainedValues.parallelStream()
-				.collect(Collectors.groupingBy(value -> value
-						.getJsonObject(Field.META.getFieldName())
-						.getString(Field.INSTANCE_IDENTIFIER.getFieldName())));
+	private void indexSlice(final IndexerInstance instance, final IndexerLane lane) {
 
-		for (final String identifier : valuesByIdentifier.keySet()) {
+		final ElasticSearchIndexerConfiguration indexerConfiguration = instance.getConfiguration();
 
-			final Collection<JsonObject> values = valuesByIdentifier.get(identifier);
+		final WebClient webClient = instance.getWebClient(lane);
 
-			if (!this.configurations.containsKey(identifier)) {
-				LOG.warn("Cannot index [{}] values for unknown instanceIdentifer [{}]", values.size(), identifier);
-				continue;
-			}
+		final Authentication authentication = indexerConfiguration.getAuthentication();
 
-			final ElasticSearchIndexerConfiguration indexerConfiguration = this.configurations.get(identifier);
+		// If required the payload hash is computed while encoding instead of in a second pass over the body
+		final MessageDigest payloadDigest = authentication != null && authentication.isPayloadHashRequired() ? createPayloadDigest() : null;
 
-			final HttpRequest<Buffer> request = getRequestFor(indexerConfiguration);
+		final int bufferedEvents = lane.getBufferedEvents();
 
-			final String indexString = getIndexString(indexerConfiguration, values);
+		final OffHeapBulkBody offHeapBody = lane.isOffHeap() ? lane.drainEncoded(payloadDigest) : null;
+		final Buffer indexBody = offHeapBody == null ? getIndexBody(instance, lane.drain(), payloadDigest) : null;
 
-			request
-				.sendBuffer(Buffer.buffer(indexString))
-				.onComplete(ar -> {
-					
-					if(ar.succeeded()) {
-						HttpResponse<Buffer> result = ar.result();
-						
-						JsonObject response = result.bodyAsJsonObject();
-						
-						if (result.statusCode() != 200 || response == null || response.getBoolean("errors", true)) {
-							handleError(values, null);
-							LOG.error("Error response received from ES \n{}", response.encodePrettily());
-						}
-					} else {
-						handleError(values, ar.cause());
-					}
-					
-				});
+		final int valueCount = bufferedEvents - lane.getBufferedEvents();
 
+		final HttpRequest<Buffer> request = getRequestFor(instance, webClient, payloadDigest != null ? payloadDigest.digest() : null);
+
+		lane.requestStarted();
+		instance.requestStarted(webClient);
+
+		final Future<HttpResponse<Buffer>> bulkResponse;
+		
+		if (offHeapBody != null) {
+			// Streamed chunk by chunk instead of being copied into one heap buffer, with a known length to avoid chunked encoding
+			request.putHeader("content-length", String.valueOf(offHeapBody.getLength()));
+			bulkResponse = request.sendStream(offHeapBody);
+		} else {
+			bulkResponse = request.sendBuffer(indexBody);
 		}
 
+		bulkResponse
+			.onComplete(ar -> {
+				
+				if (offHeapBody != null) {
+					offHeapBody.release();
+				}
+				
+				lane.requestCompleted();
+				instance.requestCompleted(webClient);
+				
+				// Priority events that arrived while the in-flight budget was exhausted
+				if (lane == instance.getPriorityLane() && lane.hasBufferedEvents()) {
+					schedulePriorityIndexing(instance);
+				}
+				
+				if(ar.succeeded()) {
+					HttpResponse<Buffer> result = ar.result();
+					
+					JsonObject response = result.bodyAsJsonObject();
+					
+					if (result.statusCode() != 200 || response == null || response.getBoolean("errors", true)) {
+						handleError(valueCount, null);
+						LOG.error("Error response received from ES \n{}", response != null ? response.encodePrettily() : result.statusCode());
+					}
+				} else {
+					handleError(valueCount, ar.cause());
+				}
+				
+			});
+
 	}
 
-	private void handleError(Collection<JsonObject> events, Throwable throwable) {
+	private void handleError(int valueCount, Throwable throwable) {
 
 		if (throwable != null) {
-			LOG.warn("Failed to index [{}] values", events.size(), throwable);
+			LOG.warn("Failed to index [{}] values", valueCount, throwable);
 		} else {
-			LOG.warn("Failed to index [{}] values", events.size());
+			LOG.warn("Failed to index [{}] values", valueCount);
 		}
 
 	}
 
-	private void initializeClient() {
+	private void initializeInstances() {
 
 		for (ElasticSearchIndexerConfiguration indexerConfig : this.configurations.values()) {
 
-			WebClientOptions options = new WebClientOptions();
-			options.setKeepAlive(true);
-			options.setTrustAll(indexerConfig.isSSLTrustAll());
+			createInstance(indexerConfig);
+
+		}
+
+		updateChunkPoolLimit();
+
+	}
+
+	private void createInstance(final ElasticSearchIndexerConfiguration indexerConfig) {
+
+		// The priority lane gets its own client (and connection pool) so it does not queue behind normal bulk requests
+		final IndexerInstance instance = new IndexerInstance(indexerConfig, WebClient.create(vertx, indexerConfig.getWebClientOptions()), 
+				WebClient.create(vertx, indexerConfig.getWebClientOptions()), this.chunkPool);
+
+		scheduleIndexing(instance);
+
+		this.instances.put(indexerConfig.getIdentifier(), instance);
+
+		LOG.info("Initialized WebClient for identifier[{}] at [{}:{}] using SSL[{}], trustAll[{}] and protocol[{}]",
+				indexerConfig.getIdentifier(), indexerConfig.getHost(), indexerConfig.getPort(),
+				indexerConfig.isSSL(), indexerConfig.isSSLTrustAll(), indexerConfig.getWebClientOptions().getProtocolVersion());
 
-			webClients.put(indexerConfig.getIdentifier(), WebClient.create(vertx, options));
+	}
+
+	private void scheduleIndexing(final IndexerInstance instance) {
+
+		final IndexerLane lane = instance.getNormalLane();
+
+		// Each instance is flushed by its own timer
+		lane.setTimerId(vertx.setPeriodic(instance.getConfiguration().getIndexScheduleInterval(), handler -> {
+
+			indexSummaries(instance, false);
+
+			if (lane.hasBufferedEvents()) {
+
+				indexCurrentData(instance, lane, false);
+
+			}
+			
+			reportStatistics(instance);
+			reportUnknownIdentifiers();
+		}));
+
+	}
 
-			LOG.info("Initialized WebClient for identifier[{}] at [{}:{}] using SSL[{}] and trustAll[{}]",
-					indexerConfig.getIdentifier(), indexerConfig.getHost(), indexerConfig.getPort(),
-					indexerConfig.isSSL(), indexerConfig.isSSLTrustAll());
+	private void schedulePriorityIndexing(final IndexerInstance instance) {
 
+		final IndexerLane lane = instance.getPriorityLane();
+
+		if (lane.getTimerId() != -1) {
+			// Flush already pending
+			return;
 		}
 
+		// Linger shortly so priority events arriving in a burst end up in the same request
+		lane.setTimerId(vertx.setTimer(instance.getConfiguration().getPriorityLingerTime(), handler -> {
+
+			lane.setTimerId(-1);
+
+			if (lane.hasBufferedEvents()) {
+
+				indexCurrentData(instance, lane, false);
+
+			}
+		}));
+
 	}
 
-	private HttpRequest<Buffer> getRequestFor(final ElasticSearchIndexerConfiguration indexerConfiguration) {
+	private void cancelIndexing(final IndexerInstance instance) {
+
+		for (IndexerLane lane : Arrays.asList(instance.getNormalLane(), instance.getPriorityLane())) {
+
+			if (lane.getTimerId() != -1) {
+				vertx.cancelTimer(lane.getTimerId());
+				lane.setTimerId(-1);
+			}
+		}
 
-		final WebClient webClient = this.webClients.get(indexerConfiguration.getIdentifier());
+	}
+
+	private MessageDigest createPayloadDigest() {
+
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException ex) {
+			throw new IllegalStateException("SHA-256 not available", ex);
+		}
+
+	}
+
+	private HttpRequest<Buffer> getRequestFor(final IndexerInstance instance, final WebClient webClient, final byte[] payloadHash) {
+
+		final ElasticSearchIndexerConfiguration indexerConfiguration = instance.getConfiguration();
 
 		HttpRequest<Buffer> request = webClient.post(indexerConfiguration.getPort(), indexerConfiguration.getHost(),
 				IndexFlavour.ELASTIC.equals(indexerConfiguration.getIndexFlavour()) ? "/_bulk" : String.format("/v1/datasets/%s/elastic/_bulk", indexerConfiguration.getIndexNameOrPattern()));
@@ -328,46 +1099,48 @@ public class ElasticSearchIndexerVerticle extends AbstractVerticle {
 		request.ssl(indexerConfiguration.isSSL());
 
 		if (indexerConfiguration.getAuthentication() != null) {
-			indexerConfiguration.getAuthentication().modifyRequest(request);
+			indexerConfiguration.getAuthentication().modifyRequest(request, payloadHash);
 		}
 
 		return request;
 	}
 
-	private String getIndexPrefixString(final ElasticSearchIndexerConfiguration indexerConfiguration, final long eventTimestamp) {
+	private String getIndexPrefixString(final IndexerInstance instance, final IndexMode indexMode, final String indexNameOrPattern, final long eventTimestamp) {
+
+		final Map<String, String> cachedIndexPrefix = instance.getCachedIndexPrefix();
 
 		boolean isDynamicCacheIndex = false;
-		String cacheKey = indexerConfiguration.getIdentifier();
+		String cacheKey = indexNameOrPattern;
 		
-		if (IndexMode.DATE_PATTERN_EVENT_TIMESTAMP.equals(indexerConfiguration.getIndexMode())
-				|| IndexMode.DATE_PATTERN_INDEX_TIMESTAMP.equals(indexerConfiguration.getIndexMode())) {
+		if (IndexMode.DATE_PATTERN_EVENT_TIMESTAMP.equals(indexMode)
+				|| IndexMode.DATE_PATTERN_INDEX_TIMESTAMP.equals(indexMode)) {
 			
 			isDynamicCacheIndex = true;
 			
-			long timestamp = IndexMode.DATE_PATTERN_EVENT_TIMESTAMP.equals(indexerConfiguration.getIndexMode())
+			long timestamp = IndexMode.DATE_PATTERN_EVENT_TIMESTAMP.equals(indexMode)
 					? eventTimestamp
 					: System.currentTimeMillis();
 
-			cacheKey = indexerConfiguration.getIdentifier() + indexDateModePattern.format(timestamp);
+			cacheKey = indexNameOrPattern + indexDateModePattern.format(timestamp);
 			
 		}
 		
-		if (!this.cachedIndexPrefix.containsKey(cacheKey)) {
+		if (!cachedIndexPrefix.containsKey(cacheKey)) {
 			
 			// We still need to create that entry
 			// For static its straight
-			String formattedIndexPattern = indexerConfiguration.getIndexNameOrPattern();
+			String formattedIndexPattern = indexNameOrPattern;
 			
 			if(isDynamicCacheIndex) {
 				
-				long timestamp = IndexMode.DATE_PATTERN_EVENT_TIMESTAMP.equals(indexerConfiguration.getIndexMode())
+				long timestamp = IndexMode.DATE_PATTERN_EVENT_TIMESTAMP.equals(indexMode)
 						? eventTimestamp
 						: System.currentTimeMillis();
 				
 				ZonedDateTime tsDateTime = ZonedDateTime.ofInstant(Instant.ofEpochMilli(timestamp), TIMEZONE_ID_UTC);
 				// Explicitly not using a DateTimeFormatter as this would require escaping the
 				// whole pattern
-				formattedIndexPattern = indexerConfiguration.getIndexNameOrPattern()
+				formattedIndexPattern = indexNameOrPattern
 						.replaceAll("yyyy", String.format("%04d", tsDateTime.getYear()))
 						.replaceAll("MM", String.format("%02d", tsDateTime.getMonthValue()))
 						.replaceAll("dd", String.format("%02d", tsDateTime.getDayOfMonth()));
@@ -378,31 +1151,39 @@ public class ElasticSearchIndexerVerticle extends AbstractVerticle {
 			String formattedIndexPrefix = String.format("{ \"index\" : { \"_index\" : \"%s\" } }%s", formattedIndexPattern, this.newLine);
 			
 			// And cache it
-			this.cachedIndexPrefix.put(cacheKey, formattedIndexPrefix);
+			cachedIndexPrefix.put(cacheKey, formattedIndexPrefix);
 		}
 		
 		// Now we should be able to read it from cache regardless if its static or dynamic
-		return this.cachedIndexPrefix.get(cacheKey);
+		return cachedIndexPrefix.get(cacheKey);
 		
 
 	}
 
-	private String getIndexString(final ElasticSearchIndexerConfiguration indexerConfiguration, final Collection<JsonObject> values) {
-
-		StringBuilder sb = new StringBuilder();
+	private Buffer getIndexBody(final IndexerInstance instance, final Collection<IndexEvent> values, final MessageDigest payloadDigest) {
 
-		for (JsonObject value : values) {
+		final BufferBulkBodyWriter writer = new BufferBulkBodyWriter(Buffer.buffer(), payloadDigest);
 
-			sb.append(getIndexPrefixString(indexerConfiguration, value.getJsonObject(Field.META.getFieldName()).getLong(Field.TIMESTAMP.getFieldName())));
+		for (IndexEvent value : values) {
 
-			JsonObject jsonValue = value.getJsonObject(Field.MESSAGE.getFieldName());
+			appendIndexEvent(writer, instance, value);
 
-			jsonValue.put(indexerConfiguration.getIndexTimestampFieldName(), indexTimeStampPattern.format(value.getJsonObject(Field.META.getFieldName()).getLong(Field.TIMESTAMP.getFieldName())));
-
-			sb.append(jsonValue.encode()).append(newLine);
 		}
 		
-		return sb.toString();
+		return writer.getBody();
+	}
+
+	private void appendIndexEvent(final BulkBodyWriter writer, final IndexerInstance instance, final IndexEvent value) {
+
+		final IndexMode indexMode = value.getIndexMode() != null ? value.getIndexMode() : instance.getConfiguration().getIndexMode();
+		final String indexNameOrPattern = value.getIndexNameOrPattern() != null ? value.getIndexNameOrPattern() : instance.getConfiguration().getIndexNameOrPattern();
+
+		writer.write(getIndexPrefixString(instance, indexMode, indexNameOrPattern, value.getTimestamp()));
+
+		value.appendDocumentTo(writer, instance.getConfiguration().getIndexTimestampFieldName(), indexTimeStampPattern.format(value.getTimestamp()));
+
+		writer.write(newLine);
+
 	}
 
 	@Override
@@ -410,23 +1191,31 @@ public class ElasticSearchIndexerVerticle extends AbstractVerticle {
 
 		LOG.info("Stopping ElasticSearchAppender Verticle");
 
-		if (!this.queue.isEmpty()) {
+		for (IndexerInstance instance : this.instances.values()) {
 
-			LOG.info("Starting to drain queue with [{}] items left to ElasticSearch", this.queue.size());
+			cancelIndexing(instance);
 
-			indexCurrentData();
+			indexSummaries(instance, true);
 
-			LOG.info("Finished queue draining");
+			if (instance.hasBufferedEvents()) {
 
-		} else {
+				LOG.info("Starting to drain queue of instanceIdentifier [{}] with [{}] items left to ElasticSearch", 
+						instance.getConfiguration().getIdentifier(), instance.getBufferedEvents());
 
-			LOG.info("No items left in queue");
+				indexCurrentData(instance, true);
 
+				LOG.info("Finished queue draining");
+
+			} else {
+
+				LOG.info("No items left in queue of instanceIdentifier [{}]", instance.getConfiguration().getIdentifier());
+
+			}
 		}
 
 		LOG.info("Stopping Web Client(s)");
-		this.webClients.values().forEach(webClient -> {
-			webClient.close();
+		this.instances.values().forEach(instance -> {
+			instance.close();
 		});
 
 		super.stop();
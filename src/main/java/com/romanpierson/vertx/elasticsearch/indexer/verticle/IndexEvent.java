@@ -0,0 +1,272 @@
+/*
+ * Copyright (c) 2016-2024 Roman Pierson
+ * ------------------------------------------------------
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License v2.0 
+ * which accompanies this distribution.
+ *
+ *     The Apache License v2.0 is available at
+ *     http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+package com.romanpierson.vertx.elasticsearch.indexer.verticle;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.romanpierson.vertx.elasticsearch.indexer.ElasticSearchIndexerConfiguration.IndexMode;
+import com.romanpierson.vertx.elasticsearch.indexer.ElasticSearchIndexerConstants.Message.Priority;
+import com.romanpierson.vertx.elasticsearch.indexer.ElasticSearchIndexerConstants.Message.Structure.Field;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * 
+ * A single event waiting to be indexed
+ * 
+ * Either holds the structured message values or an already encoded json document (payload) that is spliced into
+ * the bulk body as is - in that case only the timestamp field gets injected
+ * 
+ * Summary events of an aggregation can target a different index than the one of the instance
+ * 
+ * @author Roman Pierson
+ *
+ */
+final class IndexEvent {
+
+	private static final Logger LOG = LoggerFactory.getLogger(IndexEvent.class.getName());
+	
+	private static final int MAX_REPORTED_PRIORITIES = 100;
+	private static final Set<String> REPORTED_PRIORITIES = ConcurrentHashMap.newKeySet();
+	
+	private final String identifier;
+	private final long timestamp;
+	private final Priority priority;
+	private final IndexMode indexMode;
+	private final String indexNameOrPattern;
+	
+	private final JsonObject message;
+	
+	private final Buffer payload;
+	private final int payloadStart;
+	private final int payloadEnd;
+	private final boolean isPayloadEmpty;
+	
+	private IndexEvent(final String identifier, final long timestamp, final Priority priority, final IndexMode indexMode, final String indexNameOrPattern, final JsonObject message, final Buffer payload, final int payloadStart, final int payloadEnd, final boolean isPayloadEmpty) {
+		
+		this.identifier = identifier;
+		this.timestamp = timestamp;
+		this.priority = priority;
+		this.indexMode = indexMode;
+		this.indexNameOrPattern = indexNameOrPattern;
+		this.message = message;
+		this.payload = payload;
+		this.payloadStart = payloadStart;
+		this.payloadEnd = payloadEnd;
+		this.isPayloadEmpty = isPayloadEmpty;
+		
+	}
+	
+	static IndexEvent fromJson(final JsonObject value, final Priority defaultPriority) {
+		
+		final JsonObject meta = value.getJsonObject(Field.META.getFieldName());
+		
+		if (meta == null) {
+			throw new IllegalArgumentException("Invalid event - missing meta");
+		}
+		
+		final String identifier = meta.getString(Field.INSTANCE_IDENTIFIER.getFieldName());
+		final Long timestamp = meta.getLong(Field.TIMESTAMP.getFieldName());
+		final JsonObject message = value.getJsonObject(Field.MESSAGE.getFieldName());
+		
+		if (identifier == null || timestamp == null || message == null) {
+			throw new IllegalArgumentException("Invalid event - missing instance identifier, timestamp or message");
+		}
+		
+		return new IndexEvent(identifier, timestamp, readPriority(meta.getString(Field.PRIORITY.getFieldName()), defaultPriority), null, null, message, null, 0, 0, false);
+		
+	}
+	
+	static IndexEvent fromPayload(final String identifier, final long timestamp, final String priority, final Priority defaultPriority, final Buffer payload) {
+		
+		// Locate the outer object braces once so we can splice the document later without parsing it
+		int start = 0;
+		int end = payload.length() - 1;
+		
+		while (start <= end && isWhitespace(payload.getByte(start))) {
+			start++;
+		}
+		
+		while (end >= start && isWhitespace(payload.getByte(end))) {
+			end--;
+		}
+		
+		if (start >= end || payload.getByte(start) != '{' || payload.getByte(end) != '}') {
+			throw new IllegalArgumentException("Invalid payload - expected an encoded json object");
+		}
+		
+		// Each document has to be on a single line of the bulk body - in valid json line breaks can only be whitespace
+		for (int i = start + 1; i < end; i++) {
+			
+			final byte value = payload.getByte(i);
+			
+			if (value == '\n' || value == '\r') {
+				throw new IllegalArgumentException("Invalid payload - the encoded json object must not contain line breaks");
+			}
+		}
+		
+		int contentStart = start + 1;
+		
+		while (contentStart < end && isWhitespace(payload.getByte(contentStart))) {
+			contentStart++;
+		}
+		
+		return new IndexEvent(identifier, timestamp, readPriority(priority, defaultPriority), null, null, null, payload, start + 1, end + 1, contentStart == end);
+		
+	}
+	
+	/**
+	 * 
+	 * @param identifier			The instance identifier
+	 * @param timestamp				The bucket start timestamp
+	 * @param indexMode				The index mode for the summary or null to use the one of the instance
+	 * @param indexNameOrPattern	The index name or pattern for the summary or null to use the one of the instance
+	 * @param summary				The summary document
+	 * @return						The summary event
+	 */
+	static IndexEvent fromSummary(final String identifier, final long timestamp, final IndexMode indexMode, final String indexNameOrPattern, final JsonObject summary) {
+		return new IndexEvent(identifier, timestamp, Priority.NORMAL, indexMode, indexNameOrPattern, summary, null, 0, 0, false);
+	}
+	
+	/**
+	 * 
+	 * Returns this event with the message encoded once so it can be shared across multiple instance buffers
+	 * 
+	 * The timestamp field of the targets is left out, as it is injected again on append and would otherwise
+	 * end up as duplicate key - same as it is overwritten for a not shared message
+	 * 
+	 * @param timestampFieldName	The timestamp field name of the target instances
+	 * @return						The encoded event or this if already encoded
+	 */
+	IndexEvent encoded(final String timestampFieldName) {
+		
+		if (message == null) {
+			return this;
+		}
+		
+		// The message is restored afterwards as targets with another timestamp field name keep this field
+		final Object timestampValue = message.remove(timestampFieldName);
+		
+		final Buffer encodedMessage = message.toBuffer();
+		
+		if (timestampValue != null) {
+			message.put(timestampFieldName, timestampValue);
+		}
+		
+		return new IndexEvent(identifier, timestamp, priority, indexMode, indexNameOrPattern, null, encodedMessage, 1, encodedMessage.length(), message.isEmpty());
+		
+	}
+	
+	private static Priority readPriority(final String priority, final Priority defaultPriority) {
+		
+		if (priority == null) {
+			return defaultPriority;
+		}
+		
+		for (Priority value : Priority.values()) {
+			if (value.name().equalsIgnoreCase(priority)) {
+				return value;
+			}
+		}
+		
+		// Warned once per value - bounded as the values are sent by the producers
+		if (REPORTED_PRIORITIES.size() < MAX_REPORTED_PRIORITIES && REPORTED_PRIORITIES.add(priority)) {
+			LOG.warn("Unsupported priority [{}] - using [{}] instead", priority, defaultPriority);
+		}
+		
+		return defaultPriority;
+		
+	}
+	
+	private static boolean isWhitespace(final byte value) {
+		return value == ' ' || value == '\n' || value == '\r' || value == '\t';
+	}
+	
+	/**
+	 * 
+	 * Appends the encoded document including the timestamp field to the body
+	 * 
+	 * For a pre serialized payload the timestamp field is injected as first property so the payload must not contain that field itself
+	 * 
+	 * @param writer				The writer of the bulk body
+	 * @param timestampFieldName	The name of the timestamp field
+	 * @param formattedTimestamp	The already formatted timestamp value
+	 */
+	void appendDocumentTo(final BulkBodyWriter writer, final String timestampFieldName, final String formattedTimestamp) {
+		
+		if (message != null) {
+			
+			message.put(timestampFieldName, formattedTimestamp);
+			
+			final Buffer document = message.toBuffer();
+			
+			writer.write(document, 0, document.length());
+			
+		} else {
+			
+			writer.write("{\"" + timestampFieldName + "\":\"" + formattedTimestamp + (isPayloadEmpty ? "\"" : "\","));
+			writer.write(payload, payloadStart, payloadEnd);
+		}
+		
+	}
+	
+	String getIdentifier() {
+		return identifier;
+	}
+	
+	long getTimestamp() {
+		return timestamp;
+	}
+	
+	Priority getPriority() {
+		return priority;
+	}
+	
+	/**
+	 * 
+	 * @return	The index mode overriding the one of the instance or null
+	 */
+	IndexMode getIndexMode() {
+		return indexMode;
+	}
+	
+	/**
+	 * 
+	 * @return	The index name or pattern overriding the one of the instance or null
+	 */
+	String getIndexNameOrPattern() {
+		return indexNameOrPattern;
+	}
+	
+	/**
+	 * 
+	 * @return	The message values or null in case of a pre serialized payload
+	 */
+	JsonObject getMessage() {
+		return message;
+	}
+	
+	/**
+	 * 
+	 * @return	The message values, a pre serialized payload is parsed on every call
+	 */
+	JsonObject readMessage() {
+		return message != null ? message : new JsonObject(payload.getBuffer(payloadStart - 1, payloadEnd));
+	}
+	
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) 2016-2024 Roman Pierson
+ * ------------------------------------------------------
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License v2.0 
+ * which accompanies this distribution.
+ *
+ *     The Apache License v2.0 is available at
+ *     http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+package com.romanpierson.vertx.elasticsearch.indexer.verticle;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import com.romanpierson.vertx.elasticsearch.indexer.ElasticSearchIndexerConfiguration;
+import com.romanpierson.vertx.elasticsearch.indexer.ElasticSearchIndexerConfiguration.BufferMode;
+
+import io.vertx.ext.web.client.WebClient;
+
+/**
+ *
+ * Runtime state of a single configured ES instance
+ *
+ * Each instance has its own bounded buffers, flush schedules and in-flight request accounting so a slow or
+ * unavailable cluster does not affect the others - buffering itself is split into a normal and a priority {@link IndexerLane}
+ *
+ * In {@link BufferMode#OFF_HEAP} events of the normal lane are buffered already encoded in direct memory instead of the queue
+ *
+ * The priority lane sends through its own {@link WebClient} so its requests never wait for a pooled connection
+ * that is busy with a large normal bulk request
+ * 
+ * On reconfiguration the buffered events are kept, the previous clients are closed as soon as
+ * their in-flight requests completed
+ *
+ * @author Roman Pierson
+ *
+ */
+final class IndexerInstance {
+
+	private ElasticSearchIndexerConfiguration configuration;
+	private WebClient webClient;
+	private WebClient priorityWebClient;
+
+	private final IndexerLane normalLane;
+	private final IndexerLane priorityLane;
+	private final DirectChunkPool chunkPool;
+	private final Map<String, String> cachedIndexPrefix = new HashMap<>();
+
+	private final Map<WebClient, Integer> webClientInFlightRequests = new IdentityHashMap<>();
+	private final Set<WebClient> retiredWebClients = Collections.newSetFromMap(new IdentityHashMap<>());
+
+	IndexerInstance(final ElasticSearchIndexerConfiguration configuration, final WebClient webClient, final WebClient priorityWebClient, final DirectChunkPool chunkPool) {
+
+		this.configuration = configuration;
+		this.webClient = webClient;
+		this.priorityWebClient = priorityWebClient;
+		this.chunkPool = chunkPool;
+
+		this.normalLane = new IndexerLane("normal", configuration.getMaxBufferedEvents(), configuration.getMaxInFlightRequests(), configuration.getMaxBulkEvents());
+		this.priorityLane = new IndexerLane("priority", configuration.getPriorityMaxBufferedEvents(), configuration.getPriorityMaxInFlightRequests(), configuration.getMaxBulkEvents());
+
+		if (BufferMode.OFF_HEAP.equals(configuration.getBufferMode())) {
+			this.normalLane.setOffHeapBuffer(new OffHeapEventBuffer(chunkPool, configuration.getMaxOffHeapBytes()));
+		}
+
+	}
+
+	/**
+	 *
+	 * Applies a new configuration while keeping the buffered events
+	 *
+	 * When the buffer mode changes the normal lane must have been flushed before
+	 *
+	 * @param configuration			The new configuration
+	 * @param webClient				The client built for the new configuration
+	 * @param priorityWebClient		The client for the priority lane built for the new configuration
+	 */
+	void reconfigure(final ElasticSearchIndexerConfiguration configuration, final WebClient webClient, final WebClient priorityWebClient) {
+
+		this.normalLane.setLimits(configuration.getMaxBufferedEvents(), configuration.getMaxInFlightRequests(), configuration.getMaxBulkEvents());
+		this.priorityLane.setLimits(configuration.getPriorityMaxBufferedEvents(), configuration.getPriorityMaxInFlightRequests(), configuration.getMaxBulkEvents());
+
+		if (!BufferMode.OFF_HEAP.equals(configuration.getBufferMode())) {
+			this.normalLane.setOffHeapBuffer(null);
+		} else if (this.normalLane.getOffHeapBuffer() == null) {
+			this.normalLane.setOffHeapBuffer(new OffHeapEventBuffer(this.chunkPool, configuration.getMaxOffHeapBytes()));
+		} else {
+			this.normalLane.getOffHeapBuffer().setMaxBytes(configuration.getMaxOffHeapBytes());
+		}
+
+		retireWebClient(this.webClient);
+		retireWebClient(this.priorityWebClient);
+
+		this.configuration = configuration;
+		this.webClient = webClient;
+		this.priorityWebClient = priorityWebClient;
+
+		// Index names or patterns might have changed
+		this.cachedIndexPrefix.clear();
+
+	}
+
+	/**
+	 *
+	 * Closes the clients once all their in-flight requests completed - used when the instance is removed
+	 */
+	void close() {
+
+		retireWebClient(this.webClient);
+		retireWebClient(this.priorityWebClient);
+
+		this.webClient = null;
+		this.priorityWebClient = null;
+
+	}
+
+	/**
+	 *
+	 * Closes the {@link WebClient} once all its in-flight requests completed
+	 */
+	private void retireWebClient(final WebClient retiredWebClient) {
+
+		if (this.webClientInFlightRequests.containsKey(retiredWebClient)) {
+			this.retiredWebClients.add(retiredWebClient);
+		} else {
+			retiredWebClient.close();
+		}
+
+	}
+
+	/**
+	 *
+	 * @param usedWebClient	The client that is used to send the request
+	 */
+	void requestStarted(final WebClient usedWebClient) {
+		this.webClientInFlightRequests.merge(usedWebClient, 1, Integer::sum);
+	}
+
+	/**
+	 *
+	 * @param usedWebClient	The client that was used to send the request
+	 */
+	void requestCompleted(final WebClient usedWebClient) {
+
+		final Integer remaining = this.webClientInFlightRequests.get(usedWebClient);
+
+		if (remaining == null) {
+			return;
+		}
+
+		if (remaining > 1) {
+			this.webClientInFlightRequests.put(usedWebClient, remaining - 1);
+			return;
+		}
+
+		this.webClientInFlightRequests.remove(usedWebClient);
+
+		if (this.retiredWebClients.remove(usedWebClient)) {
+			usedWebClient.close();
+		}
+
+	}
+
+	boolean hasBufferedEvents() {
+		return this.normalLane.hasBufferedEvents() || this.priorityLane.hasBufferedEvents();
+	}
+
+	int getBufferedEvents() {
+		return this.normalLane.getBufferedEvents() + this.priorityLane.getBufferedEvents();
+	}
+
+	ElasticSearchIndexerConfiguration getConfiguration() {
+		return configuration;
+	}
+
+	/**
+	 *
+	 * @param lane	The lane to send the buffered events of
+	 * @return		The client to use for that lane
+	 */
+	WebClient getWebClient(final IndexerLane lane) {
+		return lane == this.priorityLane ? priorityWebClient : webClient;
+	}
+
+	IndexerLane getNormalLane() {
+		return normalLane;
+	}
+
+	IndexerLane getPriorityLane() {
+		return priorityLane;
+	}
+
+	Map<String, String> getCachedIndexPrefix() {
+		return cachedIndexPrefix;
+	}
+
+}
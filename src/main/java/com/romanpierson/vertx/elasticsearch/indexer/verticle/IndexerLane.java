@@ -0,0 +1,239 @@
+/*
+ * Copyright (c) 2016-2024 Roman Pierson
+ * ------------------------------------------------------
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License v2.0 
+ * which accompanies this distribution.
+ *
+ *     The Apache License v2.0 is available at
+ *     http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+package com.romanpierson.vertx.elasticsearch.indexer.verticle;
+
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+
+/**
+ *
+ * A buffer of an instance with its own flush timer and in-flight request budget
+ *
+ * Each instance has a normal lane for the bulk traffic and a priority lane for events that need to be searchable
+ * with low latency
+ *
+ * @author Roman Pierson
+ *
+ */
+final class IndexerLane {
+
+	private final String name;
+
+	private int maxBufferedEvents;
+	private int maxInFlightRequests;
+	private int maxBulkEvents;
+
+	private final Deque<IndexEvent> queue = new ArrayDeque<>();
+	private OffHeapEventBuffer offHeapBuffer;
+
+	private long timerId = -1;
+	private int inFlightRequests = 0;
+
+	private long droppedTotal = 0;
+	private long droppedSinceLastReport = 0;
+
+	IndexerLane(final String name, final int maxBufferedEvents, final int maxInFlightRequests, final int maxBulkEvents) {
+
+		this.name = name;
+		this.maxBufferedEvents = maxBufferedEvents;
+		this.maxInFlightRequests = maxInFlightRequests;
+		this.maxBulkEvents = maxBulkEvents;
+
+	}
+
+	/**
+	 *
+	 * Applies new limits while keeping the buffered events
+	 *
+	 * @param maxBufferedEvents		The new buffer limit
+	 * @param maxInFlightRequests	The new in-flight request limit
+	 * @param maxBulkEvents			The new limit of events per bulk request
+	 */
+	void setLimits(final int maxBufferedEvents, final int maxInFlightRequests, final int maxBulkEvents) {
+
+		this.maxBufferedEvents = maxBufferedEvents;
+
+		// Keep the oldest events if the new limit is lower
+		while (this.queue.size() > maxBufferedEvents) {
+
+			this.queue.pollLast();
+
+			droppedTotal++;
+			droppedSinceLastReport++;
+		}
+
+		this.maxInFlightRequests = maxInFlightRequests;
+		this.maxBulkEvents = maxBulkEvents;
+
+		if (this.offHeapBuffer != null) {
+			this.offHeapBuffer.setMaxSliceEvents(maxBulkEvents);
+		}
+
+	}
+
+	/**
+	 *
+	 * @param offHeapBuffer	The off heap buffer to use instead of the queue or null to use the queue
+	 */
+	void setOffHeapBuffer(final OffHeapEventBuffer offHeapBuffer) {
+
+		this.offHeapBuffer = offHeapBuffer;
+
+		if (offHeapBuffer != null) {
+			offHeapBuffer.setMaxSliceEvents(this.maxBulkEvents);
+		}
+
+	}
+
+	OffHeapEventBuffer getOffHeapBuffer() {
+		return offHeapBuffer;
+	}
+
+	/**
+	 *
+	 * Adds the event to the buffer of this lane
+	 *
+	 * @param indexEvent	The event
+	 * @return				False if the buffer is full and the event was dropped
+	 */
+	boolean offer(final IndexEvent indexEvent) {
+
+		if (this.queue.size() < this.maxBufferedEvents) {
+			this.queue.add(indexEvent);
+			return true;
+		}
+
+		droppedTotal++;
+		droppedSinceLastReport++;
+
+		return false;
+
+	}
+
+	/**
+	 *
+	 * Starts writing an event directly into the off heap buffer of this lane
+	 *
+	 * @return	The writer for the encoded bulk lines of the event
+	 */
+	BulkBodyWriter startEncodedEvent() {
+
+		this.offHeapBuffer.startEvent();
+
+		return this.offHeapBuffer;
+
+	}
+
+	/**
+	 *
+	 * @return	False if the off heap budget is exhausted and the event was dropped
+	 */
+	boolean completeEncodedEvent() {
+
+		if (this.offHeapBuffer.completeEvent()) {
+			return true;
+		}
+
+		droppedTotal++;
+		droppedSinceLastReport++;
+
+		return false;
+
+	}
+
+	boolean isOffHeap() {
+		return this.offHeapBuffer != null;
+	}
+
+	boolean hasBufferedEvents() {
+		return getBufferedEvents() > 0;
+	}
+
+	int getBufferedEvents() {
+		return isOffHeap() ? this.offHeapBuffer.getBufferedEvents() : this.queue.size();
+	}
+
+	/**
+	 *
+	 * @return	The oldest buffered events, at most maxBulkEvents
+	 */
+	Collection<IndexEvent> drain() {
+
+		final Collection<IndexEvent> drainedValues = new ArrayList<>(Math.min(this.queue.size(), this.maxBulkEvents));
+
+		while (!this.queue.isEmpty() && drainedValues.size() < this.maxBulkEvents) {
+			drainedValues.add(this.queue.poll());
+		}
+
+		return drainedValues;
+
+	}
+
+	/**
+	 *
+	 * @param payloadDigest	Optional digest that is updated with the encoded events
+	 * @return				The bulk body of the oldest off heap buffered events, at most maxBulkEvents
+	 */
+	OffHeapBulkBody drainEncoded(final MessageDigest payloadDigest) {
+		return this.offHeapBuffer.drain(payloadDigest);
+	}
+
+	boolean isRequestAllowed() {
+		return this.inFlightRequests < this.maxInFlightRequests;
+	}
+
+	void requestStarted() {
+		this.inFlightRequests++;
+	}
+
+	void requestCompleted() {
+		this.inFlightRequests--;
+	}
+
+	int getInFlightRequests() {
+		return inFlightRequests;
+	}
+
+	/**
+	 *
+	 * @return	The amount of events dropped because of a full buffer since the last call of this method
+	 */
+	long resetDroppedSinceLastReport() {
+
+		final long value = droppedSinceLastReport;
+		droppedSinceLastReport = 0;
+
+		return value;
+
+	}
+
+	long getDroppedTotal() {
+		return droppedTotal;
+	}
+
+	String getName() {
+		return name;
+	}
+
+	long getTimerId() {
+		return timerId;
+	}
+
+	void setTimerId(final long timerId) {
+		this.timerId = timerId;
+	}
+
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2016-2024 Roman Pierson
+ * ------------------------------------------------------
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License v2.0 
+ * which accompanies this distribution.
+ *
+ *     The Apache License v2.0 is available at
+ *     http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+package com.romanpierson.vertx.elasticsearch.indexer.verticle;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.streams.ReadStream;
+
+/**
+ * 
+ * Bulk body of a drained {@link OffHeapEventBuffer} that is sent chunk by chunk
+ * 
+ * Each chunk is copied into a chunk sized buffer when it is requested by the request and released back to the pool right away,
+ * so the whole body never exists on the heap at once
+ * 
+ * @author Roman Pierson
+ *
+ */
+final class OffHeapBulkBody implements ReadStream<Buffer> {
+
+	private final DirectChunkPool pool;
+	private final Deque<ByteBuffer> chunks;
+	private final long length;
+	
+	private Handler<Buffer> handler;
+	private Handler<Void> endHandler;
+	private long demand = Long.MAX_VALUE;
+	
+	private boolean isEmitting = false;
+	private boolean isEnded = false;
+	
+	/**
+	 * 
+	 * @param pool		The pool the chunks are released to
+	 * @param chunks	The chunks ready to be read
+	 * @param length	The total amount of bytes of all chunks
+	 */
+	OffHeapBulkBody(final DirectChunkPool pool, final Collection<ByteBuffer> chunks, final long length) {
+		
+		this.pool = pool;
+		this.chunks = new ArrayDeque<>(chunks);
+		this.length = length;
+		
+	}
+	
+	@Override
+	public OffHeapBulkBody exceptionHandler(final Handler<Throwable> handler) {
+		
+		// Reading from memory does not fail
+		return this;
+		
+	}
+	
+	@Override
+	public OffHeapBulkBody handler(final Handler<Buffer> handler) {
+		
+		this.handler = handler;
+		
+		emit();
+		
+		return this;
+		
+	}
+	
+	@Override
+	public OffHeapBulkBody pause() {
+		
+		this.demand = 0;
+		
+		return this;
+		
+	}
+	
+	@Override
+	public OffHeapBulkBody resume() {
+		
+		return fetch(Long.MAX_VALUE);
+		
+	}
+	
+	@Override
+	public OffHeapBulkBody fetch(final long amount) {
+		
+		this.demand = Long.MAX_VALUE - this.demand > amount ? this.demand + amount : Long.MAX_VALUE;
+		
+		emit();
+		
+		return this;
+		
+	}
+	
+	@Override
+	public OffHeapBulkBody endHandler(final Handler<Void> endHandler) {
+		
+		this.endHandler = endHandler;
+		
+		emit();
+		
+		return this;
+		
+	}
+	
+	private void emit() {
+		
+		// A handler requesting more data while being called is served by the running loop
+		if (isEmitting) {
+			return;
+		}
+		
+		isEmitting = true;
+		
+		try {
+			
+			while (handler != null && demand > 0 && !chunks.isEmpty()) {
+				
+				final ByteBuffer chunk = chunks.poll();
+				
+				final byte[] value = new byte[chunk.remaining()];
+				chunk.get(value);
+				
+				pool.release(chunk);
+				
+				if (demand != Long.MAX_VALUE) {
+					demand--;
+				}
+				
+				handler.handle(Buffer.buffer(value));
+			}
+			
+			if (chunks.isEmpty() && !isEnded && handler != null && endHandler != null) {
+				
+				isEnded = true;
+				
+				endHandler.handle(null);
+			}
+			
+		} finally {
+			isEmitting = false;
+		}
+		
+	}
+	
+	/**
+	 * 
+	 * Releases the chunks that were not read, eg because the request failed before the body was sent completely
+	 */
+	void release() {
+		
+		while (!chunks.isEmpty()) {
+			pool.release(chunks.poll());
+		}
+		
+		isEnded = true;
+		
+	}
+	
+	long getLength() {
+		return length;
+	}
+	
+}
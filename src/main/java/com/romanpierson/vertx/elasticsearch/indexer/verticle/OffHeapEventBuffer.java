@@ -0,0 +1,265 @@
+/*
+ * Copyright (c) 2016-2024 Roman Pierson
+ * ------------------------------------------------------
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License v2.0 
+ * which accompanies this distribution.
+ *
+ *     The Apache License v2.0 is available at
+ *     http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+package com.romanpierson.vertx.elasticsearch.indexer.verticle;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import io.vertx.core.buffer.Buffer;
+
+/**
+ * 
+ * Buffer of already encoded bulk lines (NDJSON) stored in pooled direct memory chunks
+ * 
+ * Events are encoded on arrival directly into the chunks so between arrival and flush nothing is retained on the heap.
+ * An event is written between {@link #startEvent()} and {@link #completeEvent()}, if it exceeds the budget it is rolled back
+ * 
+ * The end of every maxSliceEvents events is recorded so a large backlog is drained in bounded slices
+ * 
+ * @author Roman Pierson
+ *
+ */
+final class OffHeapEventBuffer implements BulkBodyWriter {
+
+	private final DirectChunkPool pool;
+	private long maxBytes;
+	
+	private final List<ByteBuffer> chunks = new ArrayList<>();
+	private long bufferedBytes = 0;
+	private int bufferedEvents = 0;
+	
+	private byte[] copyWindow;
+	
+	// End of the last completed event
+	private int completedChunks = 0;
+	private int completedPosition = 0;
+	
+	private long eventBytes;
+	private boolean isEventOverBudget;
+	
+	// Buffered bytes and events at the end of each full slice
+	private final Deque<long[]> sliceEnds = new ArrayDeque<>();
+	private int maxSliceEvents = Integer.MAX_VALUE;
+	private int eventsSinceSliceEnd = 0;
+	
+	OffHeapEventBuffer(final DirectChunkPool pool, final long maxBytes) {
+		
+		this.pool = pool;
+		this.maxBytes = maxBytes;
+		
+	}
+	
+	void startEvent() {
+		
+		// Discards the remains of an event that failed while being written
+		rollbackEvent();
+		
+		eventBytes = 0;
+		isEventOverBudget = false;
+		
+	}
+	
+	/**
+	 * 
+	 * @return	False if the off heap budget is exhausted and the event was rolled back
+	 */
+	boolean completeEvent() {
+		
+		if (isEventOverBudget) {
+			rollbackEvent();
+			return false;
+		}
+		
+		bufferedBytes += eventBytes;
+		bufferedEvents++;
+		
+		completedChunks = chunks.size();
+		completedPosition = chunks.isEmpty() ? 0 : chunks.get(chunks.size() - 1).position();
+		
+		eventBytes = 0;
+		
+		if (++eventsSinceSliceEnd >= maxSliceEvents) {
+			sliceEnds.add(new long[] { bufferedBytes, bufferedEvents });
+			eventsSinceSliceEnd = 0;
+		}
+		
+		return true;
+		
+	}
+	
+	private void rollbackEvent() {
+		
+		while (chunks.size() > completedChunks) {
+			pool.release(chunks.remove(chunks.size() - 1));
+		}
+		
+		if (!chunks.isEmpty()) {
+			chunks.get(chunks.size() - 1).position(completedPosition);
+		}
+		
+		eventBytes = 0;
+		
+	}
+	
+	@Override
+	public void write(final byte[] value) {
+		write(value, 0, value.length);
+	}
+	
+	@Override
+	public void write(final Buffer value, final int start, final int end) {
+		
+		if (copyWindow == null) {
+			copyWindow = new byte[pool.getChunkSize()];
+		}
+		
+		// Buffers offer no common access to their backing memory so they are copied through a reused window
+		for (int offset = start; offset < end && !isEventOverBudget; offset += copyWindow.length) {
+			
+			final int windowEnd = Math.min(end, offset + copyWindow.length);
+			
+			value.getBytes(offset, windowEnd, copyWindow, 0);
+			write(copyWindow, 0, windowEnd - offset);
+		}
+		
+	}
+	
+	private void write(final byte[] value, final int valueOffset, final int valueLength) {
+		
+		if (isEventOverBudget || bufferedBytes + eventBytes + valueLength > maxBytes) {
+			isEventOverBudget = true;
+			return;
+		}
+		
+		int offset = valueOffset;
+		final int end = valueOffset + valueLength;
+		
+		while (offset < end) {
+			
+			ByteBuffer chunk = chunks.isEmpty() ? null : chunks.get(chunks.size() - 1);
+			
+			if (chunk == null || !chunk.hasRemaining()) {
+				chunk = pool.acquire();
+				chunks.add(chunk);
+			}
+			
+			final int length = Math.min(chunk.remaining(), end - offset);
+			
+			chunk.put(value, offset, length);
+			
+			offset += length;
+		}
+		
+		eventBytes += valueLength;
+		
+	}
+	
+	/**
+	 * 
+	 * Hands out the bulk lines of the oldest slice, the chunks are released back to the pool while the body is read
+	 * 
+	 * @param payloadDigest	Optional digest that is updated with the chunks
+	 * @return				The bulk body
+	 */
+	OffHeapBulkBody drain(final MessageDigest payloadDigest) {
+		
+		rollbackEvent();
+		
+		final long[] sliceEnd = sliceEnds.poll();
+		
+		final long sliceBytes = sliceEnd != null ? sliceEnd[0] : bufferedBytes;
+		final long sliceEvents = sliceEnd != null ? sliceEnd[1] : bufferedEvents;
+		
+		long remainingBytes = sliceBytes;
+		int fullChunks = 0;
+		
+		while (fullChunks < chunks.size() && chunks.get(fullChunks).position() <= remainingBytes) {
+			remainingBytes -= chunks.get(fullChunks).position();
+			fullChunks++;
+		}
+		
+		final List<ByteBuffer> sliceChunks = new ArrayList<>(chunks.subList(0, fullChunks));
+		
+		if (remainingBytes > 0) {
+			
+			// The slice ends within this chunk, its head is moved into a chunk of its own
+			final ByteBuffer chunk = chunks.get(fullChunks);
+			final ByteBuffer head = pool.acquire();
+			
+			chunk.flip();
+			
+			final ByteBuffer headBytes = chunk.duplicate();
+			headBytes.limit((int) remainingBytes);
+			head.put(headBytes);
+			
+			chunk.position((int) remainingBytes);
+			chunk.compact();
+			
+			sliceChunks.add(head);
+		}
+		
+		chunks.subList(0, fullChunks).clear();
+		
+		for (ByteBuffer chunk : sliceChunks) {
+			
+			chunk.flip();
+			
+			if (payloadDigest != null) {
+				payloadDigest.update(chunk.duplicate());
+			}
+		}
+		
+		bufferedBytes -= sliceBytes;
+		bufferedEvents -= sliceEvents;
+		
+		for (long[] remainingSliceEnd : sliceEnds) {
+			remainingSliceEnd[0] -= sliceBytes;
+			remainingSliceEnd[1] -= sliceEvents;
+		}
+		
+		if (sliceEnd == null) {
+			eventsSinceSliceEnd = 0;
+		}
+		
+		completedChunks = chunks.size();
+		completedPosition = chunks.isEmpty() ? 0 : chunks.get(chunks.size() - 1).position();
+		
+		return new OffHeapBulkBody(pool, sliceChunks, sliceBytes);
+		
+	}
+	
+	void setMaxBytes(final long maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+	
+	/**
+	 * 
+	 * @param maxSliceEvents	The maximum events drained at once, applies to the slices recorded from now on
+	 */
+	void setMaxSliceEvents(final int maxSliceEvents) {
+		this.maxSliceEvents = maxSliceEvents;
+	}
+	
+	int getBufferedEvents() {
+		return bufferedEvents;
+	}
+	
+	long getBufferedBytes() {
+		return bufferedBytes;
+	}
+	
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2016-2024 Roman Pierson
+ * ------------------------------------------------------
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License v2.0 
+ * which accompanies this distribution.
+ *
+ *     The Apache License v2.0 is available at
+ *     http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+package com.romanpierson.vertx.elasticsearch.indexer.aggregation;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.romanpierson.vertx.elasticsearch.indexer.ElasticSearchIndexerConstants.Message.Summary;
+
+import io.vertx.core.json.JsonObject;
+
+/**
+ * 
+ * Tests the grouping per bucket and key fields and when a bucket counts as closed
+ * 
+ * @author Roman Pierson
+ *
+ */
+public class AggregatorTest {
+
+	private static final long BUCKET_INTERVAL = 1000;
+	
+	private final List<Long> bucketStarts = new ArrayList<>();
+	private final List<JsonObject> summaries = new ArrayList<>();
+	
+	private static Aggregator createAggregator(final int maxGroups) {
+		return new Aggregator(Collections.singletonList("route"), BUCKET_INTERVAL, "latency", null, null, false, maxGroups);
+	}
+	
+	private static JsonObject createMessage(final String route, final long latency) {
+		return new JsonObject().put("route", route).put("latency", latency);
+	}
+	
+	private void collect(final Long bucketStart, final JsonObject summary) {
+		
+		bucketStarts.add(bucketStart);
+		summaries.add(summary);
+		
+	}
+	
+	@Test
+	public void testOpenBucketIsNotDrained() {
+		
+		final Aggregator aggregator = createAggregator(10);
+		
+		assertTrue(aggregator.add(1500, 1500, createMessage("/a", 10)));
+		
+		// The bucket starting at 1000 is open until 2000
+		aggregator.drainClosedBuckets(1999, this::collect);
+		
+		assertTrue(summaries.isEmpty());
+		assertTrue(aggregator.hasBuckets());
+		
+	}
+	
+	@Test
+	public void testBucketIsDrainedAtItsEnd() {
+		
+		final Aggregator aggregator = createAggregator(10);
+		
+		assertTrue(aggregator.add(1000, 1000, createMessage("/a", 10)));
+		assertTrue(aggregator.add(1999, 1999, createMessage("/a", 30)));
+		
+		aggregator.drainClosedBuckets(2000, this::collect);
+		
+		assertEquals(Arrays.asList(1000L), bucketStarts);
+		assertEquals("/a", summaries.get(0).getString("route"));
+		assertEquals(BUCKET_INTERVAL, summaries.get(0).getLong(Summary.BUCKET_INTERVAL));
+		assertEquals(2L, summaries.get(0).getLong(Summary.COUNT));
+		assertEquals(10L, summaries.get(0).getJsonObject(Summary.LATENCY).getLong(Summary.MIN));
+		assertEquals(30L, summaries.get(0).getJsonObject(Summary.LATENCY).getLong(Summary.MAX));
+		assertFalse(aggregator.hasBuckets());
+		
+	}
+	
+	@Test
+	public void testOnlyClosedBucketsAreDrained() {
+		
+		final Aggregator aggregator = createAggregator(10);
+		
+		assertTrue(aggregator.add(500, 2500, createMessage("/a", 10)));
+		assertTrue(aggregator.add(1500, 2500, createMessage("/a", 10)));
+		assertTrue(aggregator.add(2500, 2500, createMessage("/a", 10)));
+		
+		aggregator.drainClosedBuckets(2500, this::collect);
+		
+		assertEquals(Arrays.asList(0L, 1000L), bucketStarts);
+		assertTrue(aggregator.hasBuckets());
+		
+		aggregator.drainAllBuckets(this::collect);
+		
+		assertEquals(Arrays.asList(0L, 1000L, 2000L), bucketStarts);
+		assertFalse(aggregator.hasBuckets());
+		
+	}
+	
+	@Test
+	public void testGroupsPerKeyFieldValues() {
+		
+		final Aggregator aggregator = createAggregator(10);
+		
+		assertTrue(aggregator.add(1000, 1000, createMessage("/a", 10)));
+		assertTrue(aggregator.add(1100, 1100, createMessage("/b", 10)));
+		assertTrue(aggregator.add(1200, 1200, createMessage("/a", 10)));
+		
+		aggregator.drainClosedBuckets(2000, this::collect);
+		
+		assertEquals(2, summaries.size());
+		
+		for (JsonObject summary : summaries) {
+			assertEquals("/a".equals(summary.getString("route")) ? 2L : 1L, summary.getLong(Summary.COUNT));
+		}
+		
+	}
+	
+	@Test
+	public void testTimestampAheadIsClampedToCurrentBucket() {
+		
+		final Aggregator aggregator = createAggregator(10);
+		
+		assertTrue(aggregator.add(60000, 1500, createMessage("/a", 10)));
+		
+		aggregator.drainClosedBuckets(2000, this::collect);
+		
+		assertEquals(Arrays.asList(1000L), bucketStarts);
+		
+	}
+	
+	@Test
+	public void testGroupLimit() {
+		
+		final Aggregator aggregator = createAggregator(2);
+		
+		assertTrue(aggregator.add(1000, 1000, createMessage("/a", 10)));
+		assertTrue(aggregator.add(1000, 1000, createMessage("/b", 10)));
+		
+		// Existing groups still count while a new one is dropped
+		assertFalse(aggregator.add(1000, 1000, createMessage("/c", 10)));
+		assertTrue(aggregator.add(1000, 1000, createMessage("/a", 10)));
+		
+		assertEquals(1L, aggregator.getDroppedTotal());
+		
+		// Drained groups free up the limit again
+		aggregator.drainClosedBuckets(2000, this::collect);
+		
+		assertTrue(aggregator.add(2000, 2000, createMessage("/c", 10)));
+		
+	}
+	
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2016-2024 Roman Pierson
+ * ------------------------------------------------------
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License v2.0 
+ * which accompanies this distribution.
+ *
+ *     The Apache License v2.0 is available at
+ *     http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+package com.romanpierson.vertx.elasticsearch.indexer.aggregation;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.romanpierson.vertx.elasticsearch.indexer.ElasticSearchIndexerConstants.Message.Summary;
+
+/**
+ * 
+ * Tests the bucket layout and the percentile accuracy of the log linear histogram
+ * 
+ * @author Roman Pierson
+ *
+ */
+public class LatencyHistogramTest {
+
+	private static final double MAX_RELATIVE_ERROR = 0.125;
+	
+	@Test
+	public void testLinearBuckets() {
+		
+		for (int value = 0; value < 8; value++) {
+			assertEquals(value, LatencyHistogram.indexOf(value));
+			assertEquals((long) value, LatencyHistogram.representativeValueOf(value));
+		}
+		
+	}
+	
+	@Test
+	public void testLogLinearBuckets() {
+		
+		// 8 to 15 is split into 4 buckets of width 2
+		assertEquals(8, LatencyHistogram.indexOf(8));
+		assertEquals(8, LatencyHistogram.indexOf(9));
+		assertEquals(9, LatencyHistogram.indexOf(10));
+		assertEquals(11, LatencyHistogram.indexOf(15));
+		assertEquals(12, LatencyHistogram.indexOf(16));
+		
+		assertEquals(9L, LatencyHistogram.representativeValueOf(8));
+		assertEquals(18L, LatencyHistogram.representativeValueOf(12));
+		
+		// 896 to 1023 is the last sub bucket of exponent 9
+		assertEquals(LatencyHistogram.indexOf(896), LatencyHistogram.indexOf(1023));
+		assertEquals(960L, LatencyHistogram.representativeValueOf(LatencyHistogram.indexOf(1000)));
+		
+	}
+	
+	@Test
+	public void testHighestExponent() {
+		
+		final int lastIndex = LatencyHistogram.indexOf(Long.MAX_VALUE);
+		
+		assertEquals(247, lastIndex);
+		assertEquals(lastIndex, LatencyHistogram.indexOf(7L << 60));
+		assertEquals(lastIndex - 3, LatencyHistogram.indexOf(1L << 62));
+		
+		// The representative value of the last bucket must not overflow
+		assertEquals((7L << 60) + (1L << 59), LatencyHistogram.representativeValueOf(lastIndex));
+		
+	}
+	
+	@Test
+	public void testRepresentativeValueWithinBucket() {
+		
+		for (int index = 0; index <= LatencyHistogram.indexOf(Long.MAX_VALUE); index++) {
+			assertEquals(index, LatencyHistogram.indexOf(LatencyHistogram.representativeValueOf(index)));
+		}
+		
+	}
+	
+	@Test
+	public void testRelativeErrorBound() {
+		
+		final Random random = new Random(42);
+		
+		for (int i = 0; i < 100000; i++) {
+			
+			final long value = (random.nextLong() >>> 1) >>> random.nextInt(63);
+			
+			assertRelativeError(value, LatencyHistogram.representativeValueOf(LatencyHistogram.indexOf(value)));
+		}
+		
+		for (int exponent = 0; exponent < 63; exponent++) {
+			
+			final long value = 1L << exponent;
+			
+			assertRelativeError(value, LatencyHistogram.representativeValueOf(LatencyHistogram.indexOf(value)));
+			assertRelativeError(value - 1, LatencyHistogram.representativeValueOf(LatencyHistogram.indexOf(value - 1)));
+		}
+		
+	}
+	
+	@Test
+	public void testPercentiles() {
+		
+		final LatencyHistogram histogram = new LatencyHistogram();
+		
+		for (long value = 1; value <= 1000; value++) {
+			histogram.record(value);
+		}
+		
+		assertRelativeError(500, histogram.percentile(0.5));
+		assertRelativeError(900, histogram.percentile(0.9));
+		assertRelativeError(990, histogram.percentile(0.99));
+		
+	}
+	
+	@Test
+	public void testPercentileClampedToMinAndMax() {
+		
+		final LatencyHistogram histogram = new LatencyHistogram();
+		
+		// The representative value of the bucket would be 960
+		histogram.record(1000);
+		
+		assertEquals(1000L, histogram.percentile(0.5));
+		
+		final LatencyHistogram otherHistogram = new LatencyHistogram();
+		
+		// The representative values of the buckets would be 576 and 960
+		otherHistogram.record(630);
+		otherHistogram.record(630);
+		otherHistogram.record(630);
+		otherHistogram.record(900);
+		
+		assertEquals(630L, otherHistogram.percentile(0.5));
+		assertEquals(900L, otherHistogram.percentile(0.99));
+		
+	}
+	
+	@Test
+	public void testNegativeValuesRecordedAsZero() {
+		
+		final LatencyHistogram histogram = new LatencyHistogram();
+		
+		histogram.record(-5);
+		
+		assertEquals(0L, histogram.percentile(0.5));
+		assertEquals(0L, histogram.toJson().getLong(Summary.MIN));
+		
+	}
+	
+	private static void assertRelativeError(final long expected, final long actual) {
+		
+		assertTrue(Math.abs(actual - expected) <= MAX_RELATIVE_ERROR * expected, 
+				String.format("[%d] is not within %.1f%% of [%d]", actual, MAX_RELATIVE_ERROR * 100, expected));
+		
+	}
+	
+}
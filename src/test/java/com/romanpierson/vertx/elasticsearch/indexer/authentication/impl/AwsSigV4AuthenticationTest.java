@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2016-2024 Roman Pierson
+ * ------------------------------------------------------
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License v2.0 
+ * which accompanies this distribution.
+ *
+ *     The Apache License v2.0 is available at
+ *     http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+package com.romanpierson.vertx.elasticsearch.indexer.authentication.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+
+import io.vertx.core.json.JsonObject;
+
+/**
+ * 
+ * Known answer tests based on the published AWS Signature Version 4 examples and test suite
+ * 
+ * @author Roman Pierson
+ *
+ */
+public class AwsSigV4AuthenticationTest {
+
+	private static final String ACCESS_KEY_ID = "AKIDEXAMPLE";
+	private static final String SECRET_ACCESS_KEY = "wJalrXUtnFEMI/K7MDENG+bPxRfiCYEXAMPLEKEY";
+	
+	private static final String EMPTY_PAYLOAD_HASH = "e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855";
+	private static final ZonedDateTime SIGNING_TIME = ZonedDateTime.of(2015, 8, 30, 12, 36, 0, 0, ZoneOffset.UTC);
+	
+	private static AwsSigV4Authentication createAuthentication(final String service, final boolean isSSL) {
+		
+		return new AwsSigV4Authentication(new JsonObject()
+				.put("region", "us-east-1")
+				.put("service", service)
+				.put("accessKeyId", ACCESS_KEY_ID)
+				.put("secretAccessKey", SECRET_ACCESS_KEY), isSSL);
+		
+	}
+	
+	private static SortedMap<String, String> getVanillaHeaders() {
+		
+		final SortedMap<String, String> headers = new TreeMap<>();
+		
+		headers.put("host", "example.amazonaws.com");
+		headers.put("x-amz-date", "20150830T123600Z");
+		
+		return headers;
+		
+	}
+	
+	@Test
+	public void testSigningKeyDerivation() throws Exception {
+		
+		assertEquals("f4780e2d9f65fa895f9c67b32ce1baf0b0d8a43505a000a1a9e090d414db404d",
+				AwsSigV4Authentication.toHex(createAuthentication("iam", true).getSigningKey("20120215")));
+		
+	}
+	
+	@Test
+	public void testGetVanilla() throws Exception {
+		
+		final String canonicalRequest = AwsSigV4Authentication.getCanonicalRequest("GET", "/", getVanillaHeaders(), EMPTY_PAYLOAD_HASH);
+		
+		assertEquals("GET\n"
+				+ "/\n"
+				+ "\n"
+				+ "host:example.amazonaws.com\n"
+				+ "x-amz-date:20150830T123600Z\n"
+				+ "\n"
+				+ "host;x-amz-date\n"
+				+ EMPTY_PAYLOAD_HASH, canonicalRequest);
+		
+		assertEquals("AWS4-HMAC-SHA256\n"
+				+ "20150830T123600Z\n"
+				+ "20150830/us-east-1/service/aws4_request\n"
+				+ "bb579772317eb040ac9ed261061d46c1f17a8133879d6129b6e1c25292927e63",
+				AwsSigV4Authentication.getStringToSign("20150830T123600Z", "20150830/us-east-1/service/aws4_request", canonicalRequest));
+		
+		assertEquals("AWS4-HMAC-SHA256 Credential=AKIDEXAMPLE/20150830/us-east-1/service/aws4_request, SignedHeaders=host;x-amz-date, "
+				+ "Signature=5fa00fa31553b73ebf1942676e86291e8372ff2a2260956d9b8aae1d763fbf31",
+				createAuthentication("service", true).getAuthorization("GET", "/", getVanillaHeaders(), EMPTY_PAYLOAD_HASH, SIGNING_TIME));
+		
+	}
+	
+	@Test
+	public void testGetVanillaQueryOrderKeyCase() {
+		
+		assertEquals("AWS4-HMAC-SHA256 Credential=AKIDEXAMPLE/20150830/us-east-1/service/aws4_request, SignedHeaders=host;x-amz-date, "
+				+ "Signature=b97d918cfa904a5beff61c982a1b6f458b799221646efd99d3219ec94cdf2500",
+				createAuthentication("service", true).getAuthorization("GET", "/?Param2=value2&Param1=value1", getVanillaHeaders(), EMPTY_PAYLOAD_HASH, SIGNING_TIME));
+		
+	}
+	
+	@Test
+	public void testHostHeaderPort() {
+		
+		final AwsSigV4Authentication ssl = createAuthentication("es", true);
+		final AwsSigV4Authentication plain = createAuthentication("es", false);
+		
+		assertEquals("example.amazonaws.com", ssl.getHostHeader("example.amazonaws.com", 443));
+		assertEquals("example.amazonaws.com:80", ssl.getHostHeader("example.amazonaws.com", 80));
+		assertEquals("example.amazonaws.com", plain.getHostHeader("example.amazonaws.com", 80));
+		assertEquals("example.amazonaws.com:443", plain.getHostHeader("example.amazonaws.com", 443));
+		assertEquals("localhost:9200", plain.getHostHeader("localhost", 9200));
+		
+	}
+	
+}
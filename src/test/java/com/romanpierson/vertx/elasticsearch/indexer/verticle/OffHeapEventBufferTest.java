@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 2016-2024 Roman Pierson
+ * ------------------------------------------------------
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License v2.0 
+ * which accompanies this distribution.
+ *
+ *     The Apache License v2.0 is available at
+ *     http://www.opensource.org/licenses/apache2.0.php
+ *
+ * You may elect to redistribute this code under either of these licenses.
+ */
+package com.romanpierson.vertx.elasticsearch.indexer.verticle;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * 
+ * Tests writing, rolling back and draining events with chunks smaller than the events
+ * 
+ * @author Roman Pierson
+ *
+ */
+public class OffHeapEventBufferTest {
+
+	private static final int CHUNK_SIZE = 4;
+	
+	private static OffHeapEventBuffer createBuffer(final long maxBytes) {
+		
+		final DirectChunkPool pool = new DirectChunkPool(CHUNK_SIZE);
+		pool.setMaxFreeBytes(maxBytes);
+		
+		return new OffHeapEventBuffer(pool, maxBytes);
+		
+	}
+	
+	private static boolean writeEvent(final OffHeapEventBuffer buffer, final String... values) {
+		
+		buffer.startEvent();
+		
+		for (String value : values) {
+			buffer.write(value);
+		}
+		
+		return buffer.completeEvent();
+		
+	}
+	
+	private static String read(final OffHeapBulkBody body) {
+		
+		final StringBuilder value = new StringBuilder();
+		
+		body.handler(chunk -> value.append(chunk.toString()));
+		
+		return value.toString();
+		
+	}
+	
+	@Test
+	public void testEventsAcrossChunkBoundaries() throws Exception {
+		
+		final OffHeapEventBuffer buffer = createBuffer(100);
+		
+		assertTrue(writeEvent(buffer, "{\"index\":{}}\n", "{\"a\":1}\n"));
+		assertTrue(writeEvent(buffer, "{\"index\":{}}\n", "{\"b\":2}\n"));
+		
+		assertEquals(2, buffer.getBufferedEvents());
+		assertEquals(42L, buffer.getBufferedBytes());
+		
+		final MessageDigest payloadDigest = MessageDigest.getInstance("SHA-256");
+		final OffHeapBulkBody body = buffer.drain(payloadDigest);
+		
+		final String expected = "{\"index\":{}}\n{\"a\":1}\n{\"index\":{}}\n{\"b\":2}\n";
+		
+		assertEquals(42L, body.getLength());
+		assertEquals(expected, read(body));
+		assertArrayEquals(MessageDigest.getInstance("SHA-256").digest(expected.getBytes(StandardCharsets.UTF_8)), payloadDigest.digest());
+		
+	}
+	
+	@Test
+	public void testOverflowWithinEventCrossingChunkBoundary() {
+		
+		final OffHeapEventBuffer buffer = createBuffer(10);
+		
+		assertTrue(writeEvent(buffer, "abcdef\n"));
+		
+		// Starts within the second chunk and crosses into the third one before the budget is exceeded
+		assertFalse(writeEvent(buffer, "gh", "ijkl\n"));
+		
+		assertEquals(1, buffer.getBufferedEvents());
+		assertEquals(7L, buffer.getBufferedBytes());
+		
+		// The space of the rolled back event is available again
+		assertTrue(writeEvent(buffer, "xy\n"));
+		
+		assertEquals("abcdef\nxy\n", read(buffer.drain(null)));
+		
+	}
+	
+	@Test
+	public void testRollbackOfIncompleteEvent() {
+		
+		final OffHeapEventBuffer buffer = createBuffer(100);
+		
+		assertTrue(writeEvent(buffer, "abc\n"));
+		
+		// Encoding failed after parts of the event were written, so the event is never completed
+		buffer.startEvent();
+		buffer.write("partial event");
+		
+		assertEquals(1, buffer.getBufferedEvents());
+		assertEquals(4L, buffer.getBufferedBytes());
+		
+		assertTrue(writeEvent(buffer, "def\n"));
+		
+		assertEquals("abc\ndef\n", read(buffer.drain(null)));
+		
+	}
+	
+	@Test
+	public void testDrainRollsBackIncompleteEvent() {
+		
+		final OffHeapEventBuffer buffer = createBuffer(100);
+		
+		assertTrue(writeEvent(buffer, "abcdef\n"));
+		
+		buffer.startEvent();
+		buffer.write("partial");
+		
+		assertEquals("abcdef\n", read(buffer.drain(null)));
+		
+	}
+	
+	@Test
+	public void testReuseAfterDrain() {
+		
+		final OffHeapEventBuffer buffer = createBuffer(10);
+		
+		assertTrue(writeEvent(buffer, "abcdefgh\n"));
+		assertEquals("abcdefgh\n", read(buffer.drain(null)));
+		
+		assertEquals(0, buffer.getBufferedEvents());
+		assertEquals(0L, buffer.getBufferedBytes());
+		
+		// The whole budget is available again
+		assertTrue(writeEvent(buffer, "ijklmnopq\n"));
+		assertFalse(writeEvent(buffer, "r\n"));
+		
+		assertEquals("ijklmnopq\n", read(buffer.drain(null)));
+		
+	}
+	
+	@Test
+	public void testDrainInSlices() {
+		
+		final OffHeapEventBuffer buffer = createBuffer(100);
+		buffer.setMaxSliceEvents(2);
+		
+		for (String value : new String[] { "a1\n", "bb22\n", "ccc333\n", "d\n", "eeeee\n" }) {
+			assertTrue(writeEvent(buffer, value));
+		}
+		
+		// The first slice ends within a chunk that is split
+		assertEquals("a1\nbb22\n", read(buffer.drain(null)));
+		assertEquals(3, buffer.getBufferedEvents());
+		
+		assertEquals("ccc333\nd\n", read(buffer.drain(null)));
+		assertEquals(1, buffer.getBufferedEvents());
+		
+		assertTrue(writeEvent(buffer, "ff\n"));
+		
+		assertEquals("eeeee\nff\n", read(buffer.drain(null)));
+		assertEquals(0, buffer.getBufferedEvents());
+		assertEquals(0L, buffer.getBufferedBytes());
+		
+	}
+	
+	@Test
+	public void testBodyIsReadOnDemand() {
+		
+		final OffHeapEventBuffer buffer = createBuffer(100);
+		
+		assertTrue(writeEvent(buffer, "abcdefghij\n"));
+		
+		final OffHeapBulkBody body = buffer.drain(null);
+		final StringBuilder value = new StringBuilder();
+		
+		body.pause();
+		body.endHandler(end -> value.append("|"));
+		body.handler(chunk -> value.append(chunk.toString()));
+		
+		assertEquals("", value.toString());
+		
+		body.fetch(1);
+		assertEquals("abcd", value.toString());
+		
+		body.fetch(Long.MAX_VALUE);
+		assertEquals("abcdefghij\n|", value.toString());
+		
+	}
+	
+}